@@ -0,0 +1,150 @@
+package com.swinder.android.m3uparser.benchmark;
+
+import com.swinder.android.m3uparser.M3UHead;
+import com.swinder.android.m3uparser.M3UItem;
+import com.swinder.android.m3uparser.M3ULog;
+import com.swinder.android.m3uparser.M3UParser;
+import com.swinder.android.m3uparser.M3UPlaylist;
+import com.swinder.android.m3uparser.M3UReader;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * Throughput of the parser on synthetic playlists. The items counter reports items per second,
+ * the gc profiler the bytes allocated per parse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class M3UParserBenchmark {
+    /**
+     * The playlist takes about 320 bytes per entry, 1000000 needs a heap of 1 GB or more.
+     */
+    @Param({"10000", "100000", "1000000"})
+    public int entries;
+
+    /**
+     * The percentage of entries with #KODIPROP lines.
+     */
+    @Param({"0", "30"})
+    public int drmShare;
+
+    /**
+     * The percentage of entries with #EXTVLCOPT and #EXTHTTP lines.
+     */
+    @Param({"0", "30"})
+    public int headerShare;
+
+    private byte[] mPlaylist;
+    private M3UParser mParser;
+    private M3UParser mLazyParser;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Items {
+        public long items;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            items = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        M3ULog.setLogger(new M3ULog.Logger() {
+            @Override
+            public void i(String tag, String msg) {
+            }
+
+            @Override
+            public void e(String tag, String msg) {
+            }
+        });
+        mPlaylist = PlaylistGenerator.generate(entries, drmShare, headerShare, 42);
+        mParser = new M3UParser();
+        mLazyParser = new M3UParser();
+        mLazyParser.setLazyItems(true);
+    }
+
+    @Benchmark
+    public boolean parse(Items items, Blackhole blackhole) throws IOException {
+        return mParser.parse(source(), new CountingHandler(items, blackhole), true);
+    }
+
+    @Benchmark
+    public boolean parseLazy(Items items, Blackhole blackhole) throws IOException {
+        return mLazyParser.parse(source(), new CountingHandler(items, blackhole), true);
+    }
+
+    @Benchmark
+    public M3UPlaylist parseToPlaylist(Items items) throws IOException {
+        M3UPlaylist playlist = new M3UPlaylist();
+        mParser.parse(source(), playlist, true);
+        items.items += playlist.size();
+        return playlist;
+    }
+
+    @Benchmark
+    public void read(Items items, Blackhole blackhole) throws IOException {
+        try (M3UReader reader = mParser.read(source(), true)) {
+            while (reader.hasNext()) {
+                blackhole.consume(reader.next());
+                items.items++;
+            }
+        }
+    }
+
+    /**
+     * @return a source reading the playlist without copying it, the segments it reads into come
+     *         from the okio pool so the allocation measured is the parser's.
+     */
+    private BufferedSource source() {
+        return Okio.buffer(Okio.source(new ByteArrayInputStream(mPlaylist)));
+    }
+
+    private static final class CountingHandler implements M3UParser.M3UHandler {
+        private final Items mItems;
+        private final Blackhole mBlackhole;
+
+        CountingHandler(Items items, Blackhole blackhole) {
+            mItems = items;
+            mBlackhole = blackhole;
+        }
+
+        @Override
+        public boolean onSetEXTM3U(M3UHead header) {
+            mBlackhole.consume(header);
+            return true;
+        }
+
+        @Override
+        public boolean onReadEXTM3U() {
+            return true;
+        }
+
+        @Override
+        public boolean onReadEXTINF(M3UItem item) {
+            mBlackhole.consume(item);
+            mItems.items++;
+            return true;
+        }
+    }
+}
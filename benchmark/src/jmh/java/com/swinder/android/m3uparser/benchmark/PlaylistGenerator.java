@@ -0,0 +1,98 @@
+package com.swinder.android.m3uparser.benchmark;
+
+import java.util.Random;
+
+import okio.Buffer;
+
+/**
+ * Generates synthetic playlists shaped like the ones of IPTV providers: a few hundred groups,
+ * logos on a handful of hosts, and DRM, user agent and header tags on a share of the entries,
+ * with keys and header blocks repeated across channels.
+ */
+public final class PlaylistGenerator {
+    private static final String[] GENRES = {"News", "Sports", "Movies", "Kids", "Music",
+            "Documentary", "Entertainment", "Series", "Religion", "Local"};
+    private static final String[] COUNTRIES = {"UK", "US", "FR", "DE", "ES", "IT", "PT", "NL",
+            "PL", "TR", "AR", "IN", "BR", "MX", "CA"};
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (Linux; Android 12; SM-T970) AppleWebKit/537.36 Chrome/120.0",
+            "VLC/3.0.20 LibVLC/3.0.20",
+            "ExoPlayerLib/2.19.1",
+            "okhttp/4.12.0"};
+
+    private PlaylistGenerator() {
+    }
+
+    /**
+     * @param entries
+     *            the number of channels.
+     * @param drmShare
+     *            the percentage of channels with #KODIPROP license lines.
+     * @param headerShare
+     *            the percentage of channels with #EXTVLCOPT and #EXTHTTP lines.
+     * @return the playlist encoded in UTF-8, about 320 bytes per entry. It is written straight
+     *         into a buffer, generating it takes about twice its size of heap.
+     */
+    public static byte[] generate(int entries, int drmShare, int headerShare, long seed) {
+        Random random = new Random(seed);
+        String[] keys = new String[64];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = hex(random, 16) + ":" + hex(random, 16);
+        }
+        String[] headers = new String[16];
+        for (int i = 0; i < headers.length; i++) {
+            headers[i] = "{\"Referer\":\"https://portal" + i + ".example.com/\",\"Origin\":"
+                    + "\"https://portal" + i + ".example.com\",\"Cookie\":\"session="
+                    + hex(random, 8) + "\"}";
+        }
+        Buffer buffer = new Buffer();
+        buffer.writeUtf8("#EXTM3U x-tvg-url=\"https://epg.example.com/guide.xml.gz\"\n");
+        for (int i = 0; i < entries; i++) {
+            String country = COUNTRIES[random.nextInt(COUNTRIES.length)];
+            String group = country + " | " + GENRES[random.nextInt(GENRES.length)]
+                    + (random.nextInt(4) == 0 ? " HD" : "");
+            String name = country + ": Channel " + i + (random.nextBoolean() ? " HD" : " FHD");
+            buffer.writeUtf8("#EXTINF:-1 tvg-id=\"channel").writeDecimalLong(i).writeByte('.')
+                    .writeUtf8(country.toLowerCase()).writeUtf8("\" tvg-name=\"").writeUtf8(name)
+                    .writeUtf8("\" tvg-logo=\"https://logos").writeDecimalLong(random.nextInt(4))
+                    .writeUtf8(".example.com/images/").writeDecimalLong(i)
+                    .writeUtf8(".png\" group-title=\"").writeUtf8(group).writeUtf8("\",")
+                    .writeUtf8(name).writeByte('\n');
+            if (random.nextInt(100) < drmShare) {
+                if (random.nextInt(3) == 0) {
+                    buffer.writeUtf8("#KODIPROP:inputstream.adaptive.license_type=")
+                            .writeUtf8("com.widevine.alpha\n")
+                            .writeUtf8("#KODIPROP:inputstream.adaptive.license_key=https://license")
+                            .writeUtf8(".example.com/widevine?channel=").writeDecimalLong(i)
+                            .writeByte('\n');
+                } else {
+                    buffer.writeUtf8("#KODIPROP:inputstream.adaptive.license_type=clearkey\n")
+                            .writeUtf8("#KODIPROP:inputstream.adaptive.license_key=")
+                            .writeUtf8(keys[random.nextInt(keys.length)]).writeByte('\n');
+                }
+            }
+            if (random.nextInt(100) < headerShare) {
+                buffer.writeUtf8("#EXTVLCOPT:http-user-agent=")
+                        .writeUtf8(USER_AGENTS[random.nextInt(USER_AGENTS.length)])
+                        .writeByte('\n')
+                        .writeUtf8("#EXTHTTP:").writeUtf8(headers[random.nextInt(headers.length)])
+                        .writeByte('\n');
+            }
+            buffer.writeUtf8("https://cdn").writeDecimalLong(random.nextInt(8))
+                    .writeUtf8(".example.com/live/").writeUtf8(country.toLowerCase())
+                    .writeByte('/').writeDecimalLong(i)
+                    .writeUtf8(random.nextBoolean() ? "/index.m3u8\n" : ".ts\n");
+        }
+        // The segments are released as they are read into the array.
+        return buffer.readByteArray();
+    }
+
+    private static String hex(Random random, int bytes) {
+        StringBuilder builder = new StringBuilder(bytes * 2);
+        for (int i = 0; i < bytes; i++) {
+            builder.append(Character.forDigit(random.nextInt(16), 16))
+                    .append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,2 @@
+# M3ULog loads the Android logger by name.
+-keep class com.swinder.android.m3uparser.M3UAndroidLogger { <init>(); }
@@ -0,0 +1,327 @@
+package com.swinder.android.m3uparser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Merges several playlists into one list of channels. The playlists are downloaded and parsed in
+ * parallel by {@link M3UParser#parseAsync(String, M3UParser.M3UHandler, boolean,
+ * M3UParser.M3UProgressListener)}, and every item is checked against the channels seen so far as
+ * soon as it is parsed: duplicates are merged into the channel they match and dropped, so only the
+ * merged channels are kept in memory, never the whole playlists.
+ * <p>
+ * Two items are the same channel if they have the same stream URL, the same channel ID or the
+ * same channel name, IDs and names compared without case, accents, punctuation and spaces.
+ * Sources are ranked by their order in the list, which the merge policy can use to prefer the
+ * fields of the first sources.
+ */
+public class M3UAggregator {
+    private static final String TAG = M3UParser.TAG;
+
+    public interface M3UMergePolicy {
+        /**
+         * When an item is a duplicate of a channel, this method will be called.
+         *
+         * @param kept
+         *            the channel, it must not be modified.
+         * @param duplicate
+         *            the duplicate item, only valid during the call.
+         * @param preferred
+         *            true if the duplicate comes from a source ranked before the ones of the
+         *            channel.
+         * @return the channel merged with the duplicate, a new item if anything changed, kept
+         *         otherwise.
+         */
+        M3UItem merge(M3UItem kept, M3UItem duplicate, boolean preferred);
+    }
+
+    public interface M3UAggregateListener {
+        /**
+         * When an item is not a duplicate of a channel already seen, this method will be called.
+         */
+        boolean onItemAdded(M3UItem item);
+
+        /**
+         * When a duplicate changed a channel, this method will be called.
+         *
+         * @param oldItem
+         *            the channel before the merge.
+         * @param item
+         *            the channel after it.
+         */
+        default boolean onItemMerged(M3UItem oldItem, M3UItem item) {
+            return true;
+        }
+
+        /**
+         * When a source was parsed, or failed, this method will be called.
+         */
+        default void onSourceFinished(String url, boolean success) {
+        }
+    }
+
+    /**
+     * Keeps the fields of the first source, and only takes from the duplicate the fields the
+     * channel does not have. Fields of a preferred duplicate replace those of the channel.
+     */
+    public static final M3UMergePolicy FILL_MISSING = (kept, duplicate, preferred) -> {
+        M3UItem primary = preferred ? duplicate : kept;
+        M3UItem secondary = preferred ? kept : duplicate;
+        M3UItem merged = copyOf(primary);
+        if (merged.getChannelName() == null) {
+            merged.setChannelName(secondary.getChannelName());
+        }
+        if (merged.getChannelID() == null) {
+            merged.setChannelID(secondary.getChannelID());
+        }
+        if (merged.getLogoURL() == null) {
+            merged.setLogoURL(secondary.getLogoURL());
+        }
+        if (merged.getGroupTitle() == null) {
+            merged.setGroupTitle(secondary.getGroupTitle());
+        }
+        if (merged.getLicenseKey() == null && secondary.getLicenseKey() != null) {
+            merged.setLicenseType(secondary.getLicenseType());
+            merged.setLicenseKeyUrl(secondary.getLicenseKey());
+        }
+        if (merged.getHttpHeader() == null && merged.getUserAgent() == null) {
+            merged.setHttpHeader(secondary.getHttpHeader());
+            merged.setUserAgent(secondary.getUserAgent());
+        }
+        return merged.fingerprint() == kept.fingerprint() ? kept : merged;
+    };
+
+    private final M3UParser mParser;
+    private M3UMergePolicy mPolicy = FILL_MISSING;
+    private boolean mDedupById = true;
+    private boolean mDedupByName = true;
+
+    private final Map<String, Channel> mByUrl = new HashMap<>();
+    private final Map<String, Channel> mById = new HashMap<>();
+    private final Map<String, Channel> mByName = new HashMap<>();
+    private final List<M3UParseTask> mTasks = new ArrayList<>();
+    /**
+     * Bumped by every aggregation, so sources of a previous one still delivering are ignored.
+     */
+    private int mGeneration = 0;
+    private int mChannels = 0;
+    private int mDuplicates = 0;
+
+    /**
+     * @param parser
+     *            the parser of the sources, it sets how many are downloaded at once.
+     */
+    public M3UAggregator(M3UParser parser) {
+        mParser = parser;
+    }
+
+    public void setMergePolicy(M3UMergePolicy policy) {
+        mPolicy = policy != null ? policy : FILL_MISSING;
+    }
+
+    /**
+     * Choose what makes two items the same channel besides their stream URL, both by default.
+     */
+    public void setDedupKeys(boolean byId, boolean byName) {
+        mDedupById = byId;
+        mDedupByName = byName;
+    }
+
+    /**
+     * Merge the playlists. The listener is called from the parsing threads, one call at a time.
+     *
+     * @param urls
+     *            the playlists, from the most to the least preferred.
+     * @return completes with true once every source was parsed successfully, false if any
+     *         failed. Cancelling it cancels the sources still running.
+     */
+    public CompletableFuture<Boolean> aggregate(List<String> urls, M3UAggregateListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("No listener");
+        }
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        synchronized (this) {
+            cancel();
+            mGeneration++;
+            mByUrl.clear();
+            mById.clear();
+            mByName.clear();
+            mChannels = 0;
+            mDuplicates = 0;
+            for (int i = 0; i < urls.size(); i++) {
+                final String url = urls.get(i);
+                M3UParseTask task = mParser.parseAsync(url, new Source(mGeneration, i, listener),
+                        false, null);
+                mTasks.add(task);
+                futures.add(task.getFuture().handle((success, ex) -> {
+                    boolean ok = ex == null && success;
+                    listener.onSourceFinished(url, ok);
+                    return ok;
+                }));
+            }
+        }
+        CompletableFuture<Boolean> result = CompletableFuture
+                .allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> {
+                    boolean success = true;
+                    for (CompletableFuture<Boolean> future : futures) {
+                        success &= future.join();
+                    }
+                    M3ULog.i(TAG, ". M3UParser aggregate() channels: " + size()
+                            + ", duplicates: " + getDuplicates());
+                    return success;
+                });
+        result.whenComplete((success, ex) -> {
+            if (result.isCancelled()) {
+                cancel();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Cancel the sources still running.
+     */
+    public synchronized void cancel() {
+        for (M3UParseTask task : mTasks) {
+            task.cancel();
+        }
+        mTasks.clear();
+    }
+
+    /**
+     * @return the number of channels so far.
+     */
+    public synchronized int size() {
+        return mChannels;
+    }
+
+    /**
+     * @return the number of duplicates merged so far.
+     */
+    public synchronized int getDuplicates() {
+        return mDuplicates;
+    }
+
+    private synchronized boolean offer(M3UItem item, int generation, int rank,
+                                       M3UAggregateListener listener) {
+        if (generation != mGeneration) {
+            return false;
+        }
+        String url = item.getStreamURL();
+        String id = mDedupById ? normalize(item.getChannelID()) : null;
+        String name = mDedupByName ? normalize(item.getChannelName()) : null;
+        Channel channel = mByUrl.get(url);
+        if (channel == null && id != null) {
+            channel = mById.get(id);
+        }
+        if (channel == null && name != null) {
+            channel = mByName.get(name);
+        }
+        if (channel == null) {
+            channel = new Channel(copyOf(item), rank);
+            register(channel, url, id, name);
+            mChannels++;
+            return listener.onItemAdded(channel.mItem);
+        }
+        mDuplicates++;
+        M3UItem old = channel.mItem;
+        M3UItem merged = mPolicy.merge(old, item, rank < channel.mRank);
+        channel.mRank = Math.min(channel.mRank, rank);
+        // Later duplicates may only match the keys of this one.
+        register(channel, url, id, name);
+        if (merged == null || merged == old) {
+            return true;
+        }
+        channel.mItem = merged;
+        return listener.onItemMerged(old, merged);
+    }
+
+    private void register(Channel channel, String url, String id, String name) {
+        mByUrl.putIfAbsent(url, channel);
+        if (id != null) {
+            mById.putIfAbsent(id, channel);
+        }
+        if (name != null) {
+            mByName.putIfAbsent(name, channel);
+        }
+    }
+
+    /**
+     * @return the key of an ID or name, null if it has nothing to compare.
+     */
+    private static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String key = M3UIndex.normalize(value).replace(" ", "");
+        return key.isEmpty() ? null : key;
+    }
+
+    /**
+     * @return a plain item with the fields of the given one, which may be a view.
+     */
+    static M3UItem copyOf(M3UItem item) {
+        M3UItem copy = new M3UItem();
+        copy.setChannelName(item.getChannelName());
+        copy.setChannelID(item.getChannelID());
+        copy.setDuration(item.getDuration());
+        copy.setStreamURL(item.getStreamURL());
+        copy.setLogoURL(item.getLogoURL());
+        copy.setGroupTitle(item.getGroupTitle());
+        copy.setType(item.getType());
+        copy.setDLNAExtras(item.getDLNAExtras());
+        copy.setPlugin(item.getPlugin());
+        copy.setLicenseType(item.getLicenseType());
+        copy.setLicenseKeyUrl(item.getLicenseKey());
+        copy.setUserAgent(item.getUserAgent());
+        copy.setHttpHeader(item.getHttpHeader());
+        copy.setAttributes(item.getAttributes());
+        // Same fields, the record can still be copied as is.
+        copy.setRaw(item.getRaw());
+        return copy;
+    }
+
+    private static final class Channel {
+        private M3UItem mItem;
+        private int mRank;
+
+        Channel(M3UItem item, int rank) {
+            mItem = item;
+            mRank = rank;
+        }
+    }
+
+    /**
+     * The handler of one source.
+     */
+    private final class Source implements M3UParser.M3UHandler {
+        private final int mGeneration;
+        private final int mRank;
+        private final M3UAggregateListener mListener;
+
+        Source(int generation, int rank, M3UAggregateListener listener) {
+            mGeneration = generation;
+            mRank = rank;
+            mListener = listener;
+        }
+
+        @Override
+        public boolean onSetEXTM3U(M3UHead header) {
+            return true;
+        }
+
+        @Override
+        public boolean onReadEXTM3U() {
+            return true;
+        }
+
+        @Override
+        public boolean onReadEXTINF(M3UItem item) {
+            return offer(item, mGeneration, mRank, mListener);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.swinder.android.m3uparser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The attributes a tokenizer extracts from a tag payload, compiled into an open addressing table
+ * the key being read is looked up in without being copied. Each attribute is a slot filled from
+ * one or more keys: the first key of the slot found in the payload wins, and a key found twice
+ * keeps its last value. Keys which are not in the table are skipped.
+ */
+final class M3UAttributeSchema {
+    private final String[] mNames;
+    private final String[] mKeys;
+    private final int[] mSlots;
+    private final int[] mRanks;
+    private final int mMask;
+
+    /**
+     * @param names
+     *            the name of each slot.
+     * @param keys
+     *            the keys of each slot, in the order they are preferred.
+     */
+    M3UAttributeSchema(List<String> names, List<String[]> keys) {
+        mNames = names.toArray(new String[0]);
+        int count = 0;
+        for (String[] slot : keys) {
+            count += slot.length;
+        }
+        // At most a quarter full, a lookup rarely probes more than one entry.
+        int capacity = Integer.highestOneBit(Math.max(count, 4) * 4 - 1) << 1;
+        mKeys = new String[capacity];
+        mSlots = new int[capacity];
+        mRanks = new int[capacity];
+        mMask = capacity - 1;
+        for (int slot = 0; slot < keys.size(); slot++) {
+            String[] slotKeys = keys.get(slot);
+            for (int rank = 0; rank < slotKeys.length; rank++) {
+                String key = slotKeys[rank];
+                int i = hash(key, 0, key.length()) & mMask;
+                while (mKeys[i] != null) {
+                    i = (i + 1) & mMask;
+                }
+                mKeys[i] = key;
+                mSlots[i] = slot;
+                mRanks[i] = rank;
+            }
+        }
+    }
+
+    /**
+     * @return the key itself then its "tvg-" and "-tvg" forms, as many playlists prefix or
+     *         suffix the same attributes.
+     */
+    static String[] aliases(String key) {
+        return new String[] {key, "tvg-" + key, key + "-tvg"};
+    }
+
+    static String[] concat(String[] first, String[] second) {
+        List<String> keys = new ArrayList<>(first.length + second.length);
+        for (String key : first) {
+            keys.add(key);
+        }
+        for (String key : second) {
+            keys.add(key);
+        }
+        return keys.toArray(new String[0]);
+    }
+
+    /**
+     * @return the number of slots.
+     */
+    int size() {
+        return mNames.length;
+    }
+
+    String getName(int slot) {
+        return mNames[slot];
+    }
+
+    /**
+     * @return the first entry of the key [begin, end) of the sequence, -1 if it is not a key of
+     *         the schema.
+     */
+    int find(CharSequence key, int begin, int end) {
+        return next(key, begin, end, hash(key, begin, end) & mMask);
+    }
+
+    /**
+     * @return the next entry of the same key, which can fill several slots, -1 if none.
+     */
+    int findNext(CharSequence key, int begin, int end, int entry) {
+        return next(key, begin, end, (entry + 1) & mMask);
+    }
+
+    int slot(int entry) {
+        return mSlots[entry];
+    }
+
+    /**
+     * @return the preference of the key of the entry in its slot, 0 for the first key.
+     */
+    int rank(int entry) {
+        return mRanks[entry];
+    }
+
+    private int next(CharSequence key, int begin, int end, int i) {
+        while (mKeys[i] != null) {
+            if (equals(mKeys[i], key, begin, end)) {
+                return i;
+            }
+            i = (i + 1) & mMask;
+        }
+        return -1;
+    }
+
+    private static boolean equals(String a, CharSequence b, int begin, int end) {
+        if (a.length() != end - begin) {
+            return false;
+        }
+        for (int i = 0; i < a.length(); i++) {
+            if (a.charAt(i) != b.charAt(begin + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence key, int begin, int end) {
+        int h = 0;
+        for (int i = begin; i < end; i++) {
+            h = 31 * h + key.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,143 @@
+package com.swinder.android.m3uparser;
+
+import java.nio.charset.Charset;
+
+import androidx.annotation.NonNull;
+import okhttp3.Response;
+
+/**
+ * Where an interrupted download of a playlist can be resumed: the byte offset right after the
+ * last record handed to the handler, and what identifies this version of the playlist. It is
+ * given to {@link M3UParser.M3UHandler#onInterrupted(M3UCheckpoint)} and resumed by
+ * {@link M3UParser#parse(M3UCheckpoint, M3UParser.M3UHandler, boolean)}, possibly after a
+ * restart of the app with {@link #toToken()} and {@link #fromToken(String)}.
+ */
+public final class M3UCheckpoint {
+    private final String mUrl;
+    private final long mOffset;
+    private final String mCharset;
+    private final String mETag;
+    private final String mLastModified;
+
+    M3UCheckpoint(String url, long offset, String charset, String eTag, String lastModified) {
+        mUrl = url;
+        mOffset = offset;
+        mCharset = charset;
+        mETag = eTag;
+        mLastModified = lastModified;
+    }
+
+    /**
+     * @return the start of the playlist, null if the server gives nothing to tell its versions
+     *         apart, the download cannot be resumed then.
+     */
+    static M3UCheckpoint start(String url, Response response) {
+        String eTag = response.header("ETag");
+        String lastModified = response.header("Last-Modified");
+        if (eTag == null && lastModified == null) {
+            return null;
+        }
+        return new M3UCheckpoint(url, 0, null, eTag, lastModified);
+    }
+
+    /**
+     * @return the checkpoint moved forward by the bytes the parse went through.
+     */
+    M3UCheckpoint advance(long bytes, Charset charset) {
+        if (bytes == 0) {
+            return this;
+        }
+        return new M3UCheckpoint(mUrl, mOffset + bytes, charset.name(), mETag, mLastModified);
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * @return the byte offset the download resumes from.
+     */
+    public long getOffset() {
+        return mOffset;
+    }
+
+    /**
+     * @return the charset the playlist is decoded with, null until it is known.
+     */
+    Charset getCharset() {
+        return mCharset != null ? Charset.forName(mCharset) : null;
+    }
+
+    /**
+     * @return the If-Range value of the resumed download. Only a strong ETag can be used, a weak
+     *         one usually means the server compresses the playlist on the fly.
+     */
+    String ifRange() {
+        if (mETag != null && !mETag.startsWith("W/")) {
+            return mETag;
+        }
+        return mLastModified;
+    }
+
+    /**
+     * @return true if the full playlist of the answer is the version of this checkpoint.
+     */
+    boolean matches(Response response) {
+        if (mETag != null) {
+            // The answer may not be compressed as the original one was, weak ETags then differ.
+            String eTag = response.header("ETag");
+            return eTag != null && strip(mETag).equals(strip(eTag));
+        }
+        return mLastModified.equals(response.header("Last-Modified"));
+    }
+
+    private static String strip(String eTag) {
+        return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+    }
+
+    /**
+     * @return the checkpoint as a string, to be stored.
+     */
+    public String toToken() {
+        return mOffset + "\n" + nonNull(mCharset) + "\n" + nonNull(mETag) + "\n"
+                + nonNull(mLastModified) + "\n" + mUrl;
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             if the token was not made by {@link #toToken()}.
+     */
+    public static M3UCheckpoint fromToken(String token) {
+        String[] fields = token.split("\n", 5);
+        if (fields.length != 5 || fields[2].isEmpty() && fields[3].isEmpty()) {
+            throw new IllegalArgumentException("Invalid token: " + token);
+        }
+        long offset;
+        try {
+            offset = Long.parseLong(fields[0]);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid token: " + token, ex);
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("Invalid token: " + token);
+        }
+        return new M3UCheckpoint(fields[4], offset, nullIfEmpty(fields[1]),
+                nullIfEmpty(fields[2]), nullIfEmpty(fields[3]));
+    }
+
+    private static String nonNull(String value) {
+        return value != null ? value : "";
+    }
+
+    private static String nullIfEmpty(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "[M3UCheckpoint@" + Integer.toHexString(hashCode()) + "]: URL: " + mUrl
+                + ", Offset: " + mOffset + ", ETag: " + mETag + ", Last-Modified: "
+                + mLastModified;
+    }
+}
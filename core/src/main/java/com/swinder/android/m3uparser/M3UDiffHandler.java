@@ -0,0 +1,174 @@
+package com.swinder.android.m3uparser;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A handler which remembers the items of the previous parse and only reports what changed when
+ * the same playlist is parsed again. Items are keyed by their channel ID, or their stream URL if
+ * they have none, and compared by {@link M3UItem#fingerprint()}.
+ * <p>
+ * The first parse reports every item as added. Use one instance per playlist.
+ */
+public class M3UDiffHandler implements M3UParser.M3UHandler {
+    public interface M3UChangeListener {
+        /**
+         * When a parse finds an item which was not in the previous one, this method will be
+         * called.
+         */
+        boolean onItemAdded(M3UItem item);
+
+        /**
+         * When an item of the previous parse is missing from the playlist, this method will be
+         * called once the whole playlist was read.
+         */
+        boolean onItemRemoved(M3UItem item);
+
+        /**
+         * When an item is still in the playlist but any of its fields changed, this method will
+         * be called.
+         *
+         * @param oldItem
+         *            the item from the previous parse.
+         * @param item
+         *            the item as it is now.
+         */
+        boolean onItemChanged(M3UItem oldItem, M3UItem item);
+
+        /**
+         * When M3UParser get a M3UHead, this method will be called.
+         */
+        default boolean onSetEXTM3U(M3UHead header) {
+            return true;
+        }
+    }
+
+    private final M3UChangeListener mListener;
+    private final Map<Key, Entry> mItems = new HashMap<>();
+    private final Map<String, Integer> mOccurrences = new HashMap<>();
+    private int mGeneration = 0;
+
+    public M3UDiffHandler(M3UChangeListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("No listener");
+        }
+        mListener = listener;
+    }
+
+    @Override
+    public boolean onStartEXTM3U() {
+        // Items of a previous parse which are not seen again in this one keep an older generation.
+        mGeneration++;
+        mOccurrences.clear();
+        return true;
+    }
+
+    @Override
+    public boolean onSetEXTM3U(M3UHead header) {
+        return mListener.onSetEXTM3U(header);
+    }
+
+    @Override
+    public boolean onReadEXTINF(M3UItem item) {
+        Key key = keyOf(item);
+        Entry entry = mItems.get(key);
+        long fingerprint = item.fingerprint();
+        if (entry == null) {
+            mItems.put(key, new Entry(item, fingerprint, mGeneration));
+            return mListener.onItemAdded(item);
+        }
+        entry.mGeneration = mGeneration;
+        if (entry.mFingerprint == fingerprint) {
+            return true;
+        }
+        M3UItem oldItem = entry.mItem;
+        entry.mItem = item;
+        entry.mFingerprint = fingerprint;
+        return mListener.onItemChanged(oldItem, item);
+    }
+
+    @Override
+    public boolean onReadEXTM3U() {
+        // The whole playlist was read, whatever was not seen again is gone.
+        boolean success = true;
+        Iterator<Entry> it = mItems.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.mGeneration != mGeneration) {
+                it.remove();
+                success &= mListener.onItemRemoved(entry.mItem);
+            }
+        }
+        mOccurrences.clear();
+        return success;
+    }
+
+    @Override
+    public boolean onNotModified() {
+        return true;
+    }
+
+    /**
+     * Forget the previous parse, the next one reports every item as added again.
+     */
+    public void reset() {
+        mItems.clear();
+        mOccurrences.clear();
+    }
+
+    /**
+     * Channel IDs are not always unique, e.g. mirrors of the same channel, the n-th item with a
+     * given ID is therefore keyed by the ID and n.
+     */
+    private Key keyOf(M3UItem item) {
+        String id = item.getChannelID();
+        if (id == null || id.isEmpty()) {
+            id = item.getStreamURL();
+        }
+        Integer seen = mOccurrences.get(id);
+        mOccurrences.put(id, seen == null ? 1 : seen + 1);
+        return new Key(id, seen == null ? 0 : seen);
+    }
+
+    /**
+     * The ID and its occurrence are kept apart, no ID can be mistaken for another one's
+     * duplicate.
+     */
+    private static final class Key {
+        private final String mId;
+        private final int mOccurrence;
+
+        private Key(String id, int occurrence) {
+            mId = id;
+            mOccurrence = occurrence;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mOccurrence == key.mOccurrence && Objects.equals(mId, key.mId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(mId) * 31 + mOccurrence;
+        }
+    }
+
+    private static final class Entry {
+        private M3UItem mItem;
+        private long mFingerprint;
+        private int mGeneration;
+
+        private Entry(M3UItem item, long fingerprint, int generation) {
+            mItem = item;
+            mFingerprint = fingerprint;
+            mGeneration = generation;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.swinder.android.m3uparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact, time-indexed EPG, loaded by {@link M3UEpgLoader}. The programmes of a channel are
+ * stored in columns sorted by start time: titles, sub-titles and categories are interned into a
+ * table and referenced by index, times are kept in primitive arrays, so "now/next" and time range
+ * queries are binary searches. Programmes are returned as new {@link M3UProgramme} instances.
+ * <p>
+ * It is not modified once loaded and can be queried from any thread.
+ */
+public final class M3UEpg {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Map<String, Channel> mChannels = new HashMap<>();
+    private final M3UInternTable<String> mStrings = new M3UInternTable<>();
+    private final boolean mKeepDescriptions;
+    private int mSize = 0;
+
+    M3UEpg(boolean keepDescriptions) {
+        mKeepDescriptions = keepDescriptions;
+    }
+
+    /**
+     * @return the number of programmes.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the IDs of the channels with programmes.
+     */
+    public Set<String> getChannelIDs() {
+        return Collections.unmodifiableSet(mChannels.keySet());
+    }
+
+    /**
+     * @param time
+     *            in milliseconds since the epoch.
+     * @return the programme on air at the given time, null if there is none.
+     */
+    public M3UProgramme getNow(String channelID, long time) {
+        Channel channel = mChannels.get(channelID);
+        if (channel == null) {
+            return null;
+        }
+        int i = channel.floor(time);
+        if (i == -1 || channel.stop(i) <= time) {
+            return null;
+        }
+        return programme(channelID, channel, i);
+    }
+
+    /**
+     * @param time
+     *            in milliseconds since the epoch.
+     * @return the first programme starting after the given time, null if there is none.
+     */
+    public M3UProgramme getNext(String channelID, long time) {
+        Channel channel = mChannels.get(channelID);
+        if (channel == null) {
+            return null;
+        }
+        int i = channel.floor(time) + 1;
+        return i < channel.mSize ? programme(channelID, channel, i) : null;
+    }
+
+    /**
+     * @param from
+     *            in milliseconds since the epoch.
+     * @param to
+     *            in milliseconds since the epoch, excluded.
+     * @return the programmes on air between the given times, by start time.
+     */
+    public List<M3UProgramme> getProgrammes(String channelID, long from, long to) {
+        Channel channel = mChannels.get(channelID);
+        if (channel == null) {
+            return Collections.emptyList();
+        }
+        List<M3UProgramme> programmes = new ArrayList<>();
+        int i = channel.floor(from);
+        if (i == -1 || channel.stop(i) <= from) {
+            i++;
+        }
+        for (; i < channel.mSize && channel.mStarts[i] < to; i++) {
+            programmes.add(programme(channelID, channel, i));
+        }
+        return programmes;
+    }
+
+    /**
+     * @param stop
+     *            -1 if unknown, the start of the next programme is used.
+     */
+    void add(String channelID, long start, long stop, String title, String subTitle,
+             String category, String description) {
+        Channel channel = mChannels.get(channelID);
+        if (channel == null) {
+            channel = new Channel();
+            mChannels.put(channelID, channel);
+        }
+        channel.add(start, stop == -1 ? -1 : (int) (Math.max(stop - start, 0) / 1000),
+                mStrings.intern(title), mStrings.intern(subTitle), mStrings.intern(category),
+                description);
+    }
+
+    /**
+     * Sort the programmes once loaded.
+     */
+    void finish() {
+        mSize = 0;
+        for (Channel channel : mChannels.values()) {
+            channel.finish();
+            mSize += channel.mSize;
+        }
+    }
+
+    private M3UProgramme programme(String channelID, Channel channel, int i) {
+        return new M3UProgramme(channelID, channel.mStarts[i], channel.stop(i),
+                mStrings.get(channel.mTitles[i]), mStrings.get(channel.mSubTitles[i]),
+                mStrings.get(channel.mCategories[i]),
+                channel.mDescriptions != null ? channel.mDescriptions[i] : null);
+    }
+
+    private final class Channel {
+        private int mSize = 0;
+        private long[] mStarts = new long[INITIAL_CAPACITY];
+        /**
+         * In seconds, -1 until the start of the next programme is known.
+         */
+        private int[] mDurations = new int[INITIAL_CAPACITY];
+        private int[] mTitles = new int[INITIAL_CAPACITY];
+        private int[] mSubTitles = new int[INITIAL_CAPACITY];
+        private int[] mCategories = new int[INITIAL_CAPACITY];
+        private String[] mDescriptions = mKeepDescriptions
+                ? new String[INITIAL_CAPACITY] : null;
+
+        void add(long start, int duration, int title, int subTitle, int category,
+                 String description) {
+            if (mSize == mStarts.length) {
+                resize(mSize * 2);
+            }
+            int i = mSize++;
+            mStarts[i] = start;
+            mDurations[i] = duration;
+            mTitles[i] = title;
+            mSubTitles[i] = subTitle;
+            mCategories[i] = category;
+            if (mDescriptions != null) {
+                mDescriptions[i] = description;
+            }
+        }
+
+        long stop(int i) {
+            return mStarts[i] + mDurations[i] * 1000L;
+        }
+
+        /**
+         * @return the index of the last programme starting at or before the time, -1 if none.
+         */
+        int floor(long time) {
+            int i = Arrays.binarySearch(mStarts, 0, mSize, time);
+            return i >= 0 ? i : -i - 2;
+        }
+
+        void finish() {
+            if (!isSorted()) {
+                sort();
+            }
+            // Several sources may list the same programme, the first one is kept.
+            int size = 0;
+            for (int i = 0; i < mSize; i++) {
+                if (size > 0 && mStarts[i] == mStarts[size - 1]) {
+                    continue;
+                }
+                move(i, size++);
+            }
+            mSize = size;
+            for (int i = 0; i < mSize; i++) {
+                if (mDurations[i] == -1) {
+                    mDurations[i] = i + 1 < mSize
+                            ? (int) ((mStarts[i + 1] - mStarts[i]) / 1000) : 0;
+                }
+            }
+            resize(mSize);
+        }
+
+        private boolean isSorted() {
+            for (int i = 1; i < mSize; i++) {
+                if (mStarts[i] < mStarts[i - 1]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void sort() {
+            Integer[] order = new Integer[mSize];
+            for (int i = 0; i < mSize; i++) {
+                order[i] = i;
+            }
+            // Stable, so the first of programmes starting at the same time stays first.
+            Arrays.sort(order, (a, b) -> Long.compare(mStarts[a], mStarts[b]));
+            long[] starts = new long[mSize];
+            int[] durations = new int[mSize];
+            int[] titles = new int[mSize];
+            int[] subTitles = new int[mSize];
+            int[] categories = new int[mSize];
+            String[] descriptions = mDescriptions != null ? new String[mSize] : null;
+            for (int i = 0; i < mSize; i++) {
+                int j = order[i];
+                starts[i] = mStarts[j];
+                durations[i] = mDurations[j];
+                titles[i] = mTitles[j];
+                subTitles[i] = mSubTitles[j];
+                categories[i] = mCategories[j];
+                if (descriptions != null) {
+                    descriptions[i] = mDescriptions[j];
+                }
+            }
+            mStarts = starts;
+            mDurations = durations;
+            mTitles = titles;
+            mSubTitles = subTitles;
+            mCategories = categories;
+            mDescriptions = descriptions;
+        }
+
+        private void move(int from, int to) {
+            if (from == to) {
+                return;
+            }
+            mStarts[to] = mStarts[from];
+            mDurations[to] = mDurations[from];
+            mTitles[to] = mTitles[from];
+            mSubTitles[to] = mSubTitles[from];
+            mCategories[to] = mCategories[from];
+            if (mDescriptions != null) {
+                mDescriptions[to] = mDescriptions[from];
+            }
+        }
+
+        private void resize(int capacity) {
+            mStarts = Arrays.copyOf(mStarts, capacity);
+            mDurations = Arrays.copyOf(mDurations, capacity);
+            mTitles = Arrays.copyOf(mTitles, capacity);
+            mSubTitles = Arrays.copyOf(mSubTitles, capacity);
+            mCategories = Arrays.copyOf(mCategories, capacity);
+            if (mDescriptions != null) {
+                mDescriptions = Arrays.copyOf(mDescriptions, capacity);
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.swinder.android.m3uparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import okhttp3.Response;
+import okio.BufferedSource;
+import okio.GzipSource;
+import okio.Okio;
+
+/**
+ * Loads the XMLTV EPG of a playlist, usually the one of its x-tvg-url header, into a
+ * {@link M3UEpg}. The document is read as a stream, gzipped or not, and only the programmes of the
+ * wanted channels are decoded and kept: the other ones are skipped without being decoded, so EPG
+ * files of hundreds of MB are loaded in the memory of the programmes kept.
+ * <p>
+ * <pre>
+ * parser.parse(url, playlist, true);
+ * M3UEpg epg = new M3UEpgLoader(parser).load(playlist);
+ * M3UProgramme now = epg.getNow(item.getChannelID(), System.currentTimeMillis());
+ * </pre>
+ */
+public class M3UEpgLoader {
+    private static final String TAG = M3UParser.TAG;
+
+    private final M3UParser mParser;
+    private boolean mKeepDescriptions = false;
+
+    /**
+     * @param parser
+     *            the parser whose HTTP client downloads the EPG.
+     */
+    public M3UEpgLoader(M3UParser parser) {
+        mParser = parser;
+    }
+
+    /**
+     * Keep the descriptions of the programmes, not kept by default as they take most of the
+     * memory of an EPG.
+     */
+    public void setKeepDescriptions(boolean keep) {
+        mKeepDescriptions = keep;
+    }
+
+    /**
+     * Load the EPG of the x-tvg-url header of the playlist, which may list several comma
+     * separated URLs, for the channel IDs of its items. Sources which fail are left out.
+     *
+     * @return the EPG, empty if the playlist has no EPG URL.
+     * @throws IOException
+     *             if every source failed.
+     */
+    public M3UEpg load(M3UPlaylist playlist) throws IOException {
+        M3UEpg epg = new M3UEpg(mKeepDescriptions);
+        M3UHead head = playlist.getHead();
+        if (head == null || head.getTVGUrl() == null) {
+            return epg;
+        }
+        Set<String> channelIDs = new HashSet<>();
+        for (M3UItem item : playlist) {
+            if (item.getChannelID() != null) {
+                channelIDs.add(item.getChannelID());
+            }
+        }
+        IOException failure = null;
+        boolean loaded = false;
+        for (String url : head.getTVGUrl().split(",")) {
+            url = url.trim();
+            if (url.isEmpty()) {
+                continue;
+            }
+            try {
+                load(url, channelIDs, epg);
+                loaded = true;
+            } catch (IOException ex) {
+                M3ULog.e(TAG, ". M3UParser loadEpg() url: " + url + ", io exception: "
+                        + ex.getMessage());
+                failure = ex;
+            }
+        }
+        if (!loaded && failure != null) {
+            throw failure;
+        }
+        epg.finish();
+        return epg;
+    }
+
+    /**
+     * @param channelIDs
+     *            the channels to keep the programmes of, null for all of them.
+     */
+    public M3UEpg load(String url, Collection<String> channelIDs) throws IOException {
+        M3UEpg epg = new M3UEpg(mKeepDescriptions);
+        load(url, toSet(channelIDs), epg);
+        epg.finish();
+        return epg;
+    }
+
+    /**
+     * @param channelIDs
+     *            the channels to keep the programmes of, null for all of them.
+     */
+    public M3UEpg load(File file, Collection<String> channelIDs) throws IOException {
+        try (BufferedSource source = Okio.buffer(Okio.source(file))) {
+            return load(source, channelIDs);
+        }
+    }
+
+    /**
+     * @param channelIDs
+     *            the channels to keep the programmes of, null for all of them.
+     */
+    public M3UEpg load(BufferedSource source, Collection<String> channelIDs) throws IOException {
+        M3UEpg epg = new M3UEpg(mKeepDescriptions);
+        read(source, toSet(channelIDs), epg);
+        epg.finish();
+        return epg;
+    }
+
+    private void load(String url, Set<String> channelIDs, M3UEpg epg) throws IOException {
+        M3ULog.i(TAG, ". M3UParser loadEpg() url: " + url);
+        try (Response response = mParser.newCall(url).execute()) {
+            if (response.code() != 200) {
+                throw new IOException("HTTP " + response.code() + " for " + url);
+            }
+            read(response.body().source(), channelIDs, epg);
+        }
+    }
+
+    private void read(BufferedSource source, Set<String> channelIDs, M3UEpg epg)
+            throws IOException {
+        M3UXmlReader reader = new M3UXmlReader(gunzip(source));
+        int kept = 0;
+        int skipped = 0;
+        int event;
+        while ((event = reader.next()) != M3UXmlReader.END_DOCUMENT) {
+            if (event != M3UXmlReader.START_TAG || "tv".equals(reader.getName())) {
+                continue;
+            }
+            if (!"programme".equals(reader.getName())) {
+                // The channels and anything else.
+                reader.skip();
+                continue;
+            }
+            String channelID = reader.getAttributeValue("channel");
+            long start = parseTime(reader.getAttributeValue("start"));
+            if (channelID == null || start == -1
+                    || (channelIDs != null && !channelIDs.contains(channelID))) {
+                reader.skip();
+                skipped++;
+                continue;
+            }
+            long stop = parseTime(reader.getAttributeValue("stop"));
+            readProgramme(reader, epg, channelID, start, stop);
+            kept++;
+        }
+        M3ULog.i(TAG, ". M3UParser loadEpg() programmes: " + kept + ", skipped: " + skipped);
+    }
+
+    private void readProgramme(M3UXmlReader reader, M3UEpg epg, String channelID, long start,
+                               long stop) throws IOException {
+        String title = null;
+        String subTitle = null;
+        String category = null;
+        String description = null;
+        int depth = reader.getDepth();
+        int event;
+        while ((event = reader.next()) != M3UXmlReader.END_DOCUMENT) {
+            if (event == M3UXmlReader.END_TAG && reader.getDepth() < depth) {
+                break;
+            }
+            if (event != M3UXmlReader.START_TAG) {
+                continue;
+            }
+            // Only the first of the elements in several languages is kept.
+            String name = reader.getName();
+            if (title == null && "title".equals(name)) {
+                title = reader.nextText();
+            } else if (subTitle == null && "sub-title".equals(name)) {
+                subTitle = reader.nextText();
+            } else if (category == null && "category".equals(name)) {
+                category = reader.nextText();
+            } else if (mKeepDescriptions && description == null && "desc".equals(name)) {
+                description = reader.nextText();
+            } else {
+                reader.skip();
+            }
+        }
+        epg.add(channelID, start, stop, title, subTitle, category, description);
+    }
+
+    private static BufferedSource gunzip(BufferedSource source) throws IOException {
+        // .xml.gz files are usually served as is, not with a gzip Content-Encoding.
+        if (source.request(2) && source.getBuffer().getByte(0) == (byte) 0x1f
+                && source.getBuffer().getByte(1) == (byte) 0x8b) {
+            return Okio.buffer(new GzipSource(source));
+        }
+        return source;
+    }
+
+    private static Set<String> toSet(Collection<String> channelIDs) {
+        if (channelIDs == null || channelIDs instanceof Set) {
+            return (Set<String>) channelIDs;
+        }
+        return new HashSet<>(channelIDs);
+    }
+
+    /**
+     * Parse an XMLTV time, "YYYYMMDDhhmmss +hhmm" where the seconds, the minutes, the hours and
+     * the offset may be left out. Without offset, the time is UTC.
+     *
+     * @return the time in milliseconds since the epoch, -1 if it is not valid.
+     */
+    static long parseTime(String time) {
+        if (time == null) {
+            return -1;
+        }
+        int digits = 0;
+        while (digits < time.length() && digits < 14 && isDigit(time.charAt(digits))) {
+            digits++;
+        }
+        if (digits < 8 || digits % 2 != 0) {
+            return -1;
+        }
+        long days;
+        try {
+            days = LocalDate.of(number(time, 0, 4), number(time, 4, 6), number(time, 6, 8))
+                    .toEpochDay();
+        } catch (DateTimeException ex) {
+            return -1;
+        }
+        long seconds = days * 86400L;
+        seconds += digits > 8 ? number(time, 8, 10) * 3600L : 0;
+        seconds += digits > 10 ? number(time, 10, 12) * 60L : 0;
+        seconds += digits > 12 ? number(time, 12, 14) : 0;
+        int i = digits;
+        while (i < time.length() && time.charAt(i) == ' ') {
+            i++;
+        }
+        if (i + 5 <= time.length() && (time.charAt(i) == '+' || time.charAt(i) == '-')) {
+            for (int j = i + 1; j < i + 5; j++) {
+                if (!isDigit(time.charAt(j))) {
+                    return -1;
+                }
+            }
+            int offset = number(time, i + 1, i + 3) * 3600 + number(time, i + 3, i + 5) * 60;
+            seconds -= time.charAt(i) == '+' ? offset : -offset;
+        }
+        return seconds * 1000L;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int number(String text, int begin, int end) {
+        int value = 0;
+        for (int i = begin; i < end; i++) {
+            value = value * 10 + text.charAt(i) - '0';
+        }
+        return value;
+    }
+}
@@ -0,0 +1,156 @@
+package com.swinder.android.m3uparser;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the records a parse delivers, set with {@link M3UParser#setFilter(M3UFilter)}. It is
+ * checked on the #EXTINF line of each record, before anything else of the record is parsed: a
+ * rejected record is skipped up to its stream URL without parsing its #KODIPROP, #EXTVLCOPT and
+ * #EXTHTTP lines, and counted by {@link M3UParseMetrics#getFilteredItems()}. The stream host can
+ * only be checked on the stream URL, the other lines of the record are parsed by then.
+ * <p>
+ * A record is kept if it matches every criterion set, and a criterion if it matches any of its
+ * values. Do not change a filter while a parse uses it.
+ */
+public final class M3UFilter {
+    /**
+     * Above this many group titles, the #EXTINF line is not searched for them before it is
+     * tokenized.
+     */
+    private static final int MAX_SCANNED_GROUP_TITLES = 16;
+
+    private Set<String> mGroupTitles = null;
+    private Set<String> mChannelIDs = null;
+    private Pattern mNamePattern = null;
+    private Set<String> mHosts = null;
+
+    /**
+     * @param titles
+     *            the group titles to keep, null for any.
+     */
+    public void setGroupTitles(Collection<String> titles) {
+        mGroupTitles = titles != null ? new HashSet<>(titles) : null;
+    }
+
+    /**
+     * @param ids
+     *            the channel IDs to keep, null for any.
+     */
+    public void setChannelIDs(Collection<String> ids) {
+        mChannelIDs = ids != null ? new HashSet<>(ids) : null;
+    }
+
+    /**
+     * @param pattern
+     *            found in the names of the channels to keep, null for any.
+     */
+    public void setNamePattern(Pattern pattern) {
+        mNamePattern = pattern;
+    }
+
+    /**
+     * @param hosts
+     *            the hosts of the streams to keep, their subdomains included, null for any.
+     */
+    public void setStreamHosts(Collection<String> hosts) {
+        if (hosts == null) {
+            mHosts = null;
+            return;
+        }
+        mHosts = new HashSet<>();
+        for (String host : hosts) {
+            mHosts.add(host.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * @return false if the #EXTINF payload cannot match, checked before it is tokenized.
+     */
+    boolean mayAccept(CharSequence payload) {
+        if (mGroupTitles == null || mGroupTitles.size() > MAX_SCANNED_GROUP_TITLES) {
+            return true;
+        }
+        for (String title : mGroupTitles) {
+            if (contains(payload, title)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean accept(String groupTitle, String channelID, String channelName) {
+        if (mGroupTitles != null && !mGroupTitles.contains(groupTitle)) {
+            return false;
+        }
+        if (mChannelIDs != null && !mChannelIDs.contains(channelID)) {
+            return false;
+        }
+        return mNamePattern == null || channelName != null
+                && mNamePattern.matcher(channelName).find();
+    }
+
+    boolean acceptStreamURL(String url) {
+        if (mHosts == null) {
+            return true;
+        }
+        String host = host(url);
+        while (host != null) {
+            if (mHosts.contains(host)) {
+                return true;
+            }
+            int dot = host.indexOf('.');
+            host = dot == -1 ? null : host.substring(dot + 1);
+        }
+        return false;
+    }
+
+    boolean checksStreamURL() {
+        return mHosts != null;
+    }
+
+    /**
+     * @return the lower case host of the URL, null if it has none.
+     */
+    private static String host(String url) {
+        int start = url.indexOf("://");
+        if (start == -1) {
+            return null;
+        }
+        start += 3;
+        int end = start;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) == -1) {
+            end++;
+        }
+        int at = url.lastIndexOf('@', end - 1);
+        if (at >= start) {
+            start = at + 1;
+        }
+        if (start == end) {
+            return null;
+        }
+        int colon = url.charAt(start) == '[' ? url.indexOf(']', start) + 1
+                : url.indexOf(':', start);
+        if (colon > start && colon < end) {
+            end = colon;
+        }
+        return url.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean contains(CharSequence text, String value) {
+        int last = text.length() - value.length();
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < value.length() && text.charAt(i + j) == value.charAt(j)) {
+                j++;
+            }
+            if (j == value.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
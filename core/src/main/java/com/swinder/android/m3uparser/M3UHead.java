@@ -20,8 +20,13 @@ public class M3UHead {
      */
     private String mPlugin;
     private String mTVGUrl;
+    /**
+     * The lines up to #EXTM3U as read from the playlist, dropped by any setter.
+     */
+    private byte[] mRaw = null;
 
     public void setName(String name) {
+        mRaw = null;
         mName = name;
     }
 
@@ -30,18 +35,34 @@ public class M3UHead {
     }
 
     public void setType(String type) {
+        mRaw = null;
         mType = type;
     }
 
+    public String getType() {
+        return mType;
+    }
+
     public void setDLNAExtras(String profile) {
+        mRaw = null;
         mDLNAExtras = profile;
     }
 
+    public String getDLNAExtras() {
+        return mDLNAExtras;
+    }
+
     public void setPlugin(String plugin) {
+        mRaw = null;
         mPlugin = plugin;
     }
 
+    public String getPlugin() {
+        return mPlugin;
+    }
+
     public void setTVGUrl(String url) {
+        mRaw = null;
         mTVGUrl = url;
     }
 
@@ -49,6 +70,14 @@ public class M3UHead {
         return mTVGUrl;
     }
 
+    byte[] getRaw() {
+        return mRaw;
+    }
+
+    void setRaw(byte[] raw) {
+        mRaw = raw;
+    }
+
     @NonNull
     @Override
     public String toString() {
@@ -0,0 +1,212 @@
+package com.swinder.android.m3uparser;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The header profiles of a parse: every distinct #EXTHTTP payload is parsed once, and identical
+ * header sets are shared by all the items using them as a single immutable map.
+ * <p>
+ * The payload is a JSON object read in a single pass, without building a JSON tree. Like the
+ * lenient org.json tokenizer, it also accepts single quoted or unquoted strings, '=' or '=>'
+ * between names and values and ';' between members. Values which are not strings are kept as
+ * written.
+ */
+final class M3UHeaderProfiles {
+    private static final String TAG = M3UParser.TAG;
+    /**
+     * Cached for payloads which are not a JSON object, compared by identity.
+     */
+    private static final Map<String, String> INVALID = new HashMap<>();
+
+    private final Map<String, Map<String, String>> mByPayload = new HashMap<>();
+    private final Map<Map<String, String>, Map<String, String>> mProfiles = new HashMap<>();
+    private final StringBuilder mBuffer = new StringBuilder(64);
+
+    /**
+     * @return the shared header profile of an #EXTHTTP payload, null if it is not a JSON object.
+     */
+    Map<String, String> get(CharSequence payload) {
+        String key = payload.toString();
+        Map<String, String> profile = mByPayload.get(key);
+        if (profile == null) {
+            try {
+                Map<String, String> header = parse(key);
+                profile = mProfiles.get(header);
+                if (profile == null) {
+                    profile = Collections.unmodifiableMap(header);
+                    mProfiles.put(header, profile);
+                }
+            } catch (IllegalArgumentException ex) {
+                if (M3ULog.isLoggable(M3ULog.ERROR)) {
+                    M3ULog.e(TAG, ". M3UParser parseExtHttp() exception: " + ex.getMessage());
+                }
+                profile = INVALID;
+            }
+            mByPayload.put(key, profile);
+        }
+        return profile == INVALID ? null : profile;
+    }
+
+    private Map<String, String> parse(String json) {
+        Map<String, String> header = new HashMap<>();
+        int i = skipSpaces(json, 0);
+        if (i == json.length() || json.charAt(i) != '{') {
+            throw syntaxError("A JSONObject text must begin with '{'", i);
+        }
+        i = skipSpaces(json, i + 1);
+        if (i < json.length() && json.charAt(i) == '}') {
+            return header;
+        }
+        while (true) {
+            i = readString(json, i);
+            String name = mBuffer.toString();
+            i = skipSpaces(json, i);
+            if (i < json.length() && (json.charAt(i) == ':' || json.charAt(i) == '=')) {
+                i++;
+                if (i < json.length() && json.charAt(i - 1) == '=' && json.charAt(i) == '>') {
+                    i++;
+                }
+            } else {
+                throw syntaxError("Expected ':' after " + name, i);
+            }
+            i = skipSpaces(json, i);
+            if (i < json.length() && (json.charAt(i) == '{' || json.charAt(i) == '[')) {
+                int end = skipValue(json, i);
+                header.put(name, json.substring(i, end));
+                i = end;
+            } else {
+                i = readString(json, i);
+                header.put(name, mBuffer.toString());
+            }
+            i = skipSpaces(json, i);
+            if (i == json.length()) {
+                throw syntaxError("Unterminated object", i);
+            }
+            char c = json.charAt(i);
+            if (c == '}') {
+                return header;
+            }
+            if (c != ',' && c != ';') {
+                throw syntaxError("Unterminated object", i);
+            }
+            i = skipSpaces(json, i + 1);
+            if (i < json.length() && json.charAt(i) == '}') {
+                return header;
+            }
+        }
+    }
+
+    /**
+     * Read a quoted or unquoted string into mBuffer.
+     *
+     * @return the index right after it.
+     */
+    private int readString(String json, int i) {
+        mBuffer.setLength(0);
+        if (i == json.length()) {
+            throw syntaxError("Expected a string", i);
+        }
+        char quote = json.charAt(i);
+        if (quote != '"' && quote != '\'') {
+            int start = i;
+            while (i < json.length() && !isDelimiter(json.charAt(i))) {
+                i++;
+            }
+            if (i == start) {
+                throw syntaxError("Expected a string", i);
+            }
+            mBuffer.append(json, start, i);
+            return i;
+        }
+        for (i++; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == quote) {
+                return i + 1;
+            }
+            if (c != '\\') {
+                mBuffer.append(c);
+                continue;
+            }
+            if (++i == json.length()) {
+                break;
+            }
+            c = json.charAt(i);
+            switch (c) {
+                case 'b':
+                    mBuffer.append('\b');
+                    break;
+                case 'f':
+                    mBuffer.append('\f');
+                    break;
+                case 'n':
+                    mBuffer.append('\n');
+                    break;
+                case 'r':
+                    mBuffer.append('\r');
+                    break;
+                case 't':
+                    mBuffer.append('\t');
+                    break;
+                case 'u':
+                    if (i + 5 > json.length()) {
+                        throw syntaxError("Unterminated escape sequence", i);
+                    }
+                    try {
+                        mBuffer.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+                    } catch (NumberFormatException ex) {
+                        throw syntaxError("Invalid escape sequence", i);
+                    }
+                    i += 4;
+                    break;
+                default:
+                    mBuffer.append(c);
+                    break;
+            }
+        }
+        throw syntaxError("Unterminated string", i);
+    }
+
+    /**
+     * @return the index right after the object or array starting at i.
+     */
+    private static int skipValue(String json, int i) {
+        int depth = 0;
+        char quote = 0;
+        for (; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if ((c == '}' || c == ']') && --depth == 0) {
+                return i + 1;
+            }
+        }
+        throw syntaxError("Unterminated value", i);
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c <= ' ' || c == ',' || c == ':' || c == '=' || c == ';' || c == '{' || c == '}'
+                || c == '[' || c == ']' || c == '"' || c == '\'' || c == '#' || c == '/'
+                || c == '\\';
+    }
+
+    private static int skipSpaces(String json, int i) {
+        while (i < json.length() && json.charAt(i) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static IllegalArgumentException syntaxError(String message, int index) {
+        return new IllegalArgumentException(message + " at character " + index);
+    }
+}
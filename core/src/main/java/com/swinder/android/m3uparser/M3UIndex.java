@@ -0,0 +1,379 @@
+package com.swinder.android.m3uparser;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexes a playlist while it is parsed: items by group, items by channel ID, and channel names
+ * by trigram (and by 1 and 2 char word prefixes for short queries) for search as you type.
+ * Items are stored in a {@link M3UPlaylist} and indexed by their position in it.
+ * <p>
+ * Use it as the handler of {@link M3UParser}, each parse replaces its content.
+ */
+public class M3UIndex implements M3UParser.M3UHandler {
+    private static final int RANK_EXACT = 0;
+    private static final int RANK_PREFIX = 1;
+    private static final int RANK_WORD_PREFIX = 2;
+    private static final int RANK_CONTAINS = 3;
+
+    private final M3UPlaylist mPlaylist;
+    private final Map<String, Postings> mGroups = new LinkedHashMap<>();
+    private final Map<String, Postings> mChannelIds = new HashMap<>();
+    private final Map<Long, Postings> mGrams = new HashMap<>();
+    /**
+     * The normalized channel names by position, so ranking does not normalize them again.
+     */
+    private String[] mNames = new String[0];
+
+    public M3UIndex() {
+        this(new M3UPlaylist());
+    }
+
+    public M3UIndex(M3UPlaylist playlist) {
+        mPlaylist = playlist;
+    }
+
+    public M3UPlaylist getPlaylist() {
+        return mPlaylist;
+    }
+
+    /**
+     * @return the group titles in the order they first appear in the playlist.
+     */
+    public List<String> getGroups() {
+        return Collections.unmodifiableList(new ArrayList<>(mGroups.keySet()));
+    }
+
+    public int getGroupSize(String group) {
+        Postings postings = mGroups.get(group);
+        return postings == null ? 0 : postings.mSize;
+    }
+
+    /**
+     * @return a page of the items of a group, in playlist order.
+     */
+    public List<M3UItem> getGroup(String group, int offset, int limit) {
+        return page(mGroups.get(group), offset, limit);
+    }
+
+    /**
+     * @return the first item with the given channel ID, e.g. to match EPG data, or null.
+     */
+    public M3UItem getByChannelID(String id) {
+        Postings postings = mChannelIds.get(id);
+        return postings == null ? null : mPlaylist.get(postings.mPositions[0]);
+    }
+
+    /**
+     * @return all the items sharing a channel ID, e.g. mirrors of a channel.
+     */
+    public List<M3UItem> getAllByChannelID(String id) {
+        Postings postings = mChannelIds.get(id);
+        return page(postings, 0, postings == null ? 0 : postings.mSize);
+    }
+
+    /**
+     * Search channel names. Case, accents and punctuation are ignored. Exact matches come first,
+     * then names starting with the query, names with a word starting with it and names merely
+     * containing it; shorter names first within each rank.
+     *
+     * @param query
+     *            the text typed so far.
+     * @param offset
+     *            the number of results to skip.
+     * @param limit
+     *            the maximum number of results.
+     */
+    public List<M3UItem> search(String query, int offset, int limit) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int[] candidates = candidates(normalized);
+        if (candidates == null) {
+            return Collections.emptyList();
+        }
+        offset = Math.max(offset, 0);
+        int wanted = (int) Math.min((long) offset + limit, candidates.length);
+        if (wanted <= offset) {
+            return Collections.emptyList();
+        }
+        // Only the best offset + limit results are kept, in a max heap of the packed keys which
+        // order by rank, then name length, then position.
+        long[] heap = new long[wanted];
+        int count = 0;
+        for (int position : candidates) {
+            String name = mNames[position];
+            int rank = rank(name, normalized);
+            if (rank == -1) {
+                continue;
+            }
+            long key = (long) rank << 56 | (long) Math.min(name.length(), 0xffffff) << 32
+                    | position;
+            if (count < wanted) {
+                heap[count] = key;
+                siftUp(heap, count++);
+            } else if (key < heap[0]) {
+                heap[0] = key;
+                siftDown(heap, count);
+            }
+        }
+        Arrays.sort(heap, 0, count);
+        List<M3UItem> items = new ArrayList<>();
+        for (int i = offset; i < count; i++) {
+            items.add(mPlaylist.get((int) heap[i]));
+        }
+        return items;
+    }
+
+    @Override
+    public boolean onStartEXTM3U() {
+        mGroups.clear();
+        mChannelIds.clear();
+        mGrams.clear();
+        mNames = new String[0];
+        return mPlaylist.onStartEXTM3U();
+    }
+
+    @Override
+    public boolean onSetEXTM3U(M3UHead header) {
+        return mPlaylist.onSetEXTM3U(header);
+    }
+
+    @Override
+    public boolean onReadEXTM3U() {
+        return mPlaylist.onReadEXTM3U();
+    }
+
+    @Override
+    public boolean onReadEXTINF(M3UItem item) {
+        boolean success = mPlaylist.onReadEXTINF(item);
+        int position = mPlaylist.size() - 1;
+        String group = item.getGroupTitle();
+        if (group != null) {
+            postings(mGroups, group).add(position);
+        }
+        String id = item.getChannelID();
+        if (id != null) {
+            postings(mChannelIds, id).add(position);
+        }
+        String name = normalize(item.getChannelName());
+        if (position >= mNames.length) {
+            mNames = Arrays.copyOf(mNames, Math.max(16, position + (position >> 1)));
+        }
+        mNames[position] = name;
+        for (int start = 0; start < name.length(); ) {
+            int end = name.indexOf(' ', start);
+            if (end == -1) {
+                end = name.length();
+            }
+            // Word prefixes for queries too short to have a trigram.
+            postings(mGrams, gram(name.charAt(start))).addOnce(position);
+            if (end - start > 1) {
+                postings(mGrams, gram(name.charAt(start), name.charAt(start + 1)))
+                        .addOnce(position);
+            }
+            for (int i = start; i + 3 <= end; i++) {
+                postings(mGrams, gram(name.charAt(i), name.charAt(i + 1), name.charAt(i + 2)))
+                        .addOnce(position);
+            }
+            start = end + 1;
+        }
+        return success;
+    }
+
+    /**
+     * @return the positions which may match, null if none can.
+     */
+    private int[] candidates(String query) {
+        List<Postings> lists = new ArrayList<>();
+        for (int start = 0; start < query.length(); ) {
+            int end = query.indexOf(' ', start);
+            if (end == -1) {
+                end = query.length();
+            }
+            if (end - start < 3) {
+                long gram = end - start == 1 ? gram(query.charAt(start))
+                        : gram(query.charAt(start), query.charAt(start + 1));
+                lists.add(mGrams.get(gram));
+            }
+            for (int i = start; i + 3 <= end; i++) {
+                lists.add(mGrams.get(gram(query.charAt(i), query.charAt(i + 1),
+                        query.charAt(i + 2))));
+            }
+            start = end + 1;
+        }
+        if (lists.contains(null)) {
+            return null;
+        }
+        Collections.sort(lists, (a, b) -> Integer.compare(a.mSize, b.mSize));
+        int[] result = Arrays.copyOf(lists.get(0).mPositions, lists.get(0).mSize);
+        int size = result.length;
+        for (int l = 1; l < lists.size() && size > 0; l++) {
+            Postings postings = lists.get(l);
+            int kept = 0;
+            int from = 0;
+            for (int i = 0; i < size; i++) {
+                int found = Arrays.binarySearch(postings.mPositions, from, postings.mSize,
+                        result[i]);
+                if (found >= 0) {
+                    result[kept++] = result[i];
+                    from = found + 1;
+                } else {
+                    from = -found - 1;
+                }
+            }
+            size = kept;
+        }
+        return size == 0 ? null : Arrays.copyOf(result, size);
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        long key = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] >= key) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = key;
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        long key = heap[0];
+        int i = 0;
+        int child;
+        while ((child = 2 * i + 1) < size) {
+            if (child + 1 < size && heap[child + 1] > heap[child]) {
+                child++;
+            }
+            if (key >= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = key;
+    }
+
+    private static int rank(String name, String query) {
+        if (name.equals(query)) {
+            return RANK_EXACT;
+        }
+        if (name.startsWith(query)) {
+            return RANK_PREFIX;
+        }
+        int index = name.indexOf(query);
+        if (index == -1) {
+            return -1;
+        }
+        while (index != -1) {
+            if (name.charAt(index - 1) == ' ') {
+                return RANK_WORD_PREFIX;
+            }
+            index = name.indexOf(query, index + 1);
+        }
+        return RANK_CONTAINS;
+    }
+
+    /**
+     * Lower case, without accents, with every run of other chars than letters and digits
+     * replaced by a single space.
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = isAscii(text) ? text : Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder builder = new StringBuilder(decomposed.length());
+        boolean space = true;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                builder.append(Character.toLowerCase(c));
+                space = false;
+            } else if (!space) {
+                builder.append(' ');
+                space = true;
+            }
+        }
+        int length = builder.length();
+        if (length > 0 && builder.charAt(length - 1) == ' ') {
+            builder.setLength(length - 1);
+        }
+        return builder.toString();
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long gram(char a) {
+        return 1L << 48 | a;
+    }
+
+    private static long gram(char a, char b) {
+        return 2L << 48 | (long) a << 16 | b;
+    }
+
+    private static long gram(char a, char b, char c) {
+        return (long) a << 32 | (long) b << 16 | c;
+    }
+
+    private static <K> Postings postings(Map<K, Postings> map, K key) {
+        Postings postings = map.get(key);
+        if (postings == null) {
+            postings = new Postings();
+            map.put(key, postings);
+        }
+        return postings;
+    }
+
+    private List<M3UItem> page(Postings postings, int offset, int limit) {
+        if (postings == null) {
+            return Collections.emptyList();
+        }
+        List<M3UItem> items = new ArrayList<>();
+        for (int i = Math.max(offset, 0); i < postings.mSize && items.size() < limit; i++) {
+            items.add(mPlaylist.get(postings.mPositions[i]));
+        }
+        return items;
+    }
+
+    /**
+     * Sorted positions of the items matching a key, positions are added in increasing order.
+     */
+    private static final class Postings {
+        private int[] mPositions = new int[4];
+        private int mSize = 0;
+
+        void add(int position) {
+            if (mSize == mPositions.length) {
+                mPositions = Arrays.copyOf(mPositions, mSize * 2);
+            }
+            mPositions[mSize++] = position;
+        }
+
+        void addOnce(int position) {
+            if (mSize == 0 || mPositions[mSize - 1] != position) {
+                add(position);
+            }
+        }
+    }
+}
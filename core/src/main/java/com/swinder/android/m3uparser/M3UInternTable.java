@@ -0,0 +1,52 @@
+package com.swinder.android.m3uparser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns values into a table so each distinct value is stored once and referenced by its index.
+ * Index -1 stands for null.
+ */
+final class M3UInternTable<T> {
+    static final int NULL = -1;
+
+    private final Map<T, Integer> mIndex = new HashMap<>();
+    private final List<T> mValues = new ArrayList<>();
+
+    int intern(T value) {
+        if (value == null) {
+            return NULL;
+        }
+        Integer index = mIndex.get(value);
+        if (index == null) {
+            index = mValues.size();
+            mIndex.put(value, index);
+            mValues.add(value);
+        }
+        return index;
+    }
+
+    /**
+     * @return the index of the value equal to the given one, {@link #NULL} if it was not
+     *         interned.
+     */
+    int indexOf(Object value) {
+        Integer index = value == null ? null : mIndex.get(value);
+        return index == null ? NULL : index;
+    }
+
+    T get(int index) {
+        return index == NULL ? null : mValues.get(index);
+    }
+
+    int size() {
+        return mValues.size();
+    }
+
+    void clear() {
+        mIndex.clear();
+        mValues.clear();
+    }
+}
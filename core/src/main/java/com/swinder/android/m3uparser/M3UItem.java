@@ -0,0 +1,361 @@
+package com.swinder.android.m3uparser;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class M3UItem {
+    private static final long FINGERPRINT_SEED = 0xcbf29ce484222325L;
+    private static final long FINGERPRINT_PRIME = 0x100000001b3L;
+
+    /**
+     * The channel name.
+     */
+    private String mChannelName;
+    private String mChannelId;
+    /**
+     * The stream duration time, it's unit is second.
+     */
+    private int mDuration;
+    /**
+     * The stream url.
+     */
+    private String mStreamURL;
+    /**
+     * The url to the logo icon.
+     */
+    private String mLogoURL;
+    /**
+     * The group name.
+     */
+    private String mGroupTitle;
+    /**
+     * The media type. It can be one of the following types: avi, asf, wmv, mp4,
+     * mpeg, mpeg1, mpeg2, ts, mp2t, mp2p, mov, mkv, 3gp, flv, aac, ac3, mp3,
+     * ogg, wma.
+     */
+    private String mType;
+    /**
+     * The DLNA profile. It can be set as none, mpeg_ps_pal, mpeg_ps_pal_ac3,
+     * mpeg_ps_ntsc, mpeg_ps_ntsc_ac3, mpeg1, mpeg_ts_sd, mpeg_ts_hd, avchd,
+     * wmv_med_base, wmv_med_full, wmv_med_pro, wmv_high_full, wmv_high_pro,
+     * asf_mpeg4_sp, asf_mpeg4_asp_l4, asf_mpeg4_asp_l5, asf_vc1_l1,
+     * mp4_avc_sd_mp3, mp4_avc_sd_ac3, mp4_avc_hd_ac3, mp4_avc_sd_aac,
+     * mpeg_ts_hd_mp3, mpeg_ts_hd_ac3, mpeg_ts_mpeg4_asp_mp3,
+     * mpeg_ts_mpeg4_asp_ac3, avi, divx5, mp3, ac3, wma_base, wma_full, wma_pro.
+     */
+    private String mDLNAExtras;
+
+    private String mLicenseType;
+    /**
+     * The license key as found in the playlist, resolved to mLicenseKeyUrl when first read.
+     */
+    private String mLicenseKey;
+    private String mLicenseKeyUrl;
+    private boolean mLicenseResolved = false;
+    /**
+     * The media plugin (handler).
+     */
+    private String mPlugin;
+    private String mUserAgent = null;
+    /**
+     * The header as set, often a profile shared by many items, it is never written to.
+     */
+    private Map<String, String> mHeader = null;
+    /**
+     * The header with the user agent applied, copied from mHeader when first read.
+     */
+    private Map<String, String> mHeaderWithUserAgent = null;
+    /**
+     * The attributes registered with {@link M3UParser#registerAttribute(String, String...)}, by
+     * name, null if the item has none of them.
+     */
+    private Map<String, String> mAttributes = null;
+    /**
+     * The lines of the record as read from the playlist, dropped by any setter.
+     */
+    private byte[] mRaw = null;
+
+    public void setChannelName(String name) {
+        mRaw = null;
+        mChannelName = name;
+    }
+
+    public String getChannelName() {
+        return mChannelName;
+    }
+
+    public void setDuration(int duration) {
+        mRaw = null;
+        mDuration = duration;
+    }
+
+    public int getDuration() {
+        return mDuration;
+    }
+
+    public void setStreamURL(String url) {
+        mRaw = null;
+        mStreamURL = url;
+    }
+
+    public String getStreamURL() {
+        return mStreamURL;
+    }
+
+    public void setLogoURL(String url) {
+        mRaw = null;
+        mLogoURL = url;
+    }
+
+    public String getLogoURL() {
+        return mLogoURL;
+    }
+
+    public void setChannelID(String id) {
+        mRaw = null;
+        mChannelId = id;
+    }
+
+    public String getChannelID() {
+        return mChannelId;
+    }
+
+    public void setGroupTitle(String title) {
+        mRaw = null;
+        mGroupTitle = title;
+    }
+
+    public String getGroupTitle() {
+        return mGroupTitle;
+    }
+
+    public void setType(String type) {
+        mRaw = null;
+        mType = type;
+    }
+
+    public String getType() {
+        return mType;
+    }
+
+    public void setDLNAExtras(String profile) {
+        mRaw = null;
+        mDLNAExtras = profile;
+    }
+
+    public String getDLNAExtras() {
+        return mDLNAExtras;
+    }
+
+    public void setPlugin(String plugin) {
+        mRaw = null;
+        mPlugin = plugin;
+    }
+
+    public String getPlugin() {
+        return mPlugin;
+    }
+
+    public void setLicenseType(String licType) {
+        if (licType != null) {
+            mLicenseType = licType;
+            mLicenseResolved = false;
+            mRaw = null;
+        }
+    }
+
+    public String getLicenseType() {
+        return mLicenseType;
+    }
+
+    public void setLicenseKeyUrl(String licKeyUrl) {
+        if (licKeyUrl != null) {
+            mLicenseKey = licKeyUrl;
+            mLicenseResolved = false;
+            mRaw = null;
+        }
+    }
+
+    /**
+     * @return the license key as found in the playlist.
+     */
+    public String getLicenseKey() {
+        return mLicenseKey;
+    }
+
+    /**
+     * @return the license passed to the player, resolved from the license key and type by
+     *         {@link M3ULicenseKeyResolver#getDefault()} on the first call.
+     */
+    public String getLicenseKeyUrl() {
+        if (!mLicenseResolved) {
+            mLicenseKeyUrl = M3ULicenseKeyResolver.getDefault().resolve(getLicenseType(),
+                    getLicenseKey());
+            mLicenseResolved = true;
+        }
+        return mLicenseKeyUrl;
+    }
+
+    public void setUserAgent(String userAgent) {
+        mRaw = null;
+        mUserAgent = userAgent;
+        mHeaderWithUserAgent = null;
+    }
+
+    public String getUserAgent() {
+        return mUserAgent;
+    }
+
+    /**
+     * @param header
+     *            the header, it is kept as is and not modified.
+     */
+    public void setHttpHeader(Map<String, String> header) {
+        mRaw = null;
+        mHeader = header;
+        mHeaderWithUserAgent = null;
+    }
+
+    /**
+     * @return the header, with the user agent if one is set. Read only when the user agent is
+     *         applied.
+     */
+    public Map<String, String> getHttpHeader() {
+        Map<String, String> header = mHeader;
+        String userAgent = mUserAgent;
+        if (header == null || userAgent == null || userAgent.equals(header.get("user-agent"))) {
+            return header;
+        }
+        Map<String, String> overlay = mHeaderWithUserAgent;
+        if (overlay == null) {
+            overlay = new HashMap<>(header);
+            overlay.put("user-agent", userAgent);
+            overlay = Collections.unmodifiableMap(overlay);
+            mHeaderWithUserAgent = overlay;
+        }
+        return overlay;
+    }
+
+    /**
+     * @param attributes
+     *            the attributes by name, null for none. It is kept as is and not modified.
+     */
+    public void setAttributes(Map<String, String> attributes) {
+        mRaw = null;
+        mAttributes = attributes;
+    }
+
+    /**
+     * @return the attributes registered with {@link M3UParser#registerAttribute(String,
+     *         String...)} found in the #EXTINF line, by name; null if none was found.
+     */
+    public Map<String, String> getAttributes() {
+        return mAttributes;
+    }
+
+    /**
+     * @return the value of an attribute registered with {@link M3UParser#registerAttribute(
+     *         String, String...)}, e.g. "catchup", null if the #EXTINF line has none.
+     */
+    public String getAttribute(String name) {
+        Map<String, String> attributes = getAttributes();
+        return attributes != null ? attributes.get(name) : null;
+    }
+
+    /**
+     * Clear every field, for the parser to reuse the item for the next record.
+     */
+    void recycle() {
+        mChannelName = null;
+        mChannelId = null;
+        mDuration = 0;
+        mStreamURL = null;
+        mLogoURL = null;
+        mGroupTitle = null;
+        mType = null;
+        mDLNAExtras = null;
+        mLicenseType = null;
+        mLicenseKey = null;
+        mLicenseKeyUrl = null;
+        mLicenseResolved = false;
+        mPlugin = null;
+        mUserAgent = null;
+        mHeader = null;
+        mHeaderWithUserAgent = null;
+        mAttributes = null;
+        mRaw = null;
+    }
+
+    /**
+     * @return the lines of the record as read from the playlist, null if the item was changed
+     *         since or the parser did not keep them.
+     */
+    byte[] getRaw() {
+        return mRaw;
+    }
+
+    void setRaw(byte[] raw) {
+        mRaw = raw;
+    }
+
+    /**
+     * A 64 bit hash of every field, two items with the same fingerprint are considered equal
+     * when a playlist is refreshed.
+     */
+    long fingerprint() {
+        Map<String, String> header = getHttpHeader();
+        Map<String, String> attributes = getAttributes();
+        long hash = FINGERPRINT_SEED;
+        hash = mix(hash, getChannelName());
+        hash = mix(hash, getChannelID());
+        hash = mix(hash, getDuration());
+        hash = mix(hash, getStreamURL());
+        hash = mix(hash, getLogoURL());
+        hash = mix(hash, getGroupTitle());
+        hash = mix(hash, getType());
+        hash = mix(hash, getDLNAExtras());
+        hash = mix(hash, getPlugin());
+        hash = mix(hash, getLicenseType());
+        hash = mix(hash, getLicenseKey());
+        hash = mix(hash, getUserAgent());
+        hash = mix(hash, header == null ? 0 : header.hashCode());
+        hash = mix(hash, attributes == null ? 0 : attributes.hashCode());
+        return hash;
+    }
+
+    private static long mix(long hash, String value) {
+        if (value == null) {
+            // No length is negative, null is told apart from "".
+            return mix(hash, -1);
+        }
+        // FNV-1a on the UTF-16 units of the value, then its length to end the field.
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FINGERPRINT_PRIME;
+        }
+        return mix(hash, value.length());
+    }
+
+    private static long mix(long hash, int value) {
+        // FNV-1a on the 4 bytes of the value.
+        for (int i = 0; i < 4; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= FINGERPRINT_PRIME;
+        }
+        return hash;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "[M3UItem@" + Integer.toHexString(hashCode()) + "]: Channel Name: " + getChannelName() +
+                ", Channel ID: " + getChannelID() + ", Duration: " + getDuration() + ", Stream URL: " +
+                getStreamURL() + ", Group: " + getGroupTitle() + ", Logo: " + getLogoURL() + ", Type: " + getType() +
+                ", DLNA Extras: " + getDLNAExtras() + ", Plugin: " + getPlugin() + ", License Type: " +
+                getLicenseType() + ", License Key Url: " + getLicenseKeyUrl() + ", User Agent: " + getUserAgent() +
+                ", Http Header: " + getHttpHeader();
+    }
+}
\ No newline at end of file
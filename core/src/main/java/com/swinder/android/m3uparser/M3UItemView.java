@@ -0,0 +1,79 @@
+package com.swinder.android.m3uparser;
+
+import java.util.Map;
+
+/**
+ * Base of the items which read their fields from a shared store instead of holding them, all the
+ * setters throw UnsupportedOperationException.
+ */
+abstract class M3UItemView extends M3UItem {
+    @Override
+    public void setChannelName(String name) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setDuration(int duration) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setStreamURL(String url) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setLogoURL(String url) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setChannelID(String id) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setGroupTitle(String title) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setType(String type) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setDLNAExtras(String profile) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setPlugin(String plugin) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setLicenseType(String licType) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setLicenseKeyUrl(String licKeyUrl) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setUserAgent(String userAgent) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setHttpHeader(Map<String, String> header) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setAttributes(Map<String, String> attributes) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,268 @@
+package com.swinder.android.m3uparser;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An item keeping the raw payloads of its tags instead of their attributes. The #EXTINF payload
+ * is parsed the first time one of its fields is read or written, the #KODIPROP, #EXTVLCOPT and
+ * #EXTHTTP payloads the first time the license, user agent or header is; the fields are then kept
+ * like in any other item. The stream URL is always set directly.
+ */
+final class M3ULazyItem extends M3UItem {
+    /**
+     * The payload of the last #EXTINF line, null once parsed.
+     */
+    private String mExtInf = null;
+    private M3UAttributeSchema mSchema = null;
+    /**
+     * The tags and payloads of the other lines, in playlist order since later lines override
+     * earlier ones. #EXTHTTP lines are kept as their shared header profile. Null once parsed.
+     */
+    private int[] mPropertyTags = null;
+    private Object[] mPropertyPayloads = null;
+    private int mPropertyCount = 0;
+
+    void setExtInf(String payload, M3UAttributeSchema schema) {
+        mExtInf = payload;
+        mSchema = schema;
+    }
+
+    void addProperty(int tag, Object payload) {
+        if (mPropertyTags == null) {
+            mPropertyTags = new int[2];
+            mPropertyPayloads = new Object[2];
+        } else if (mPropertyCount == mPropertyTags.length) {
+            mPropertyTags = Arrays.copyOf(mPropertyTags, mPropertyCount * 2);
+            mPropertyPayloads = Arrays.copyOf(mPropertyPayloads, mPropertyCount * 2);
+        }
+        mPropertyTags[mPropertyCount] = tag;
+        mPropertyPayloads[mPropertyCount++] = payload;
+    }
+
+    @Override
+    void recycle() {
+        super.recycle();
+        mExtInf = null;
+        mSchema = null;
+        if (mPropertyPayloads != null) {
+            // Kept for the next record.
+            Arrays.fill(mPropertyPayloads, 0, mPropertyCount, null);
+        }
+        mPropertyCount = 0;
+    }
+
+    private synchronized void materializeInfo() {
+        if (mExtInf == null) {
+            return;
+        }
+        String payload = mExtInf;
+        // Cleared first, the setters called below come back here.
+        mExtInf = null;
+        byte[] raw = getRaw();
+        String[] values = new String[mSchema.size()];
+        new M3UTokenizer().tokenize(payload, 0, payload.length(), mSchema, values);
+        M3UParseSession.applyItem(this, mSchema, values, null);
+        // Parsed, not changed.
+        setRaw(raw);
+    }
+
+    private synchronized void materializeProperties() {
+        if (mPropertyTags == null) {
+            return;
+        }
+        int[] tags = mPropertyTags;
+        Object[] payloads = mPropertyPayloads;
+        int count = mPropertyCount;
+        mPropertyTags = null;
+        mPropertyPayloads = null;
+        mPropertyCount = 0;
+        byte[] raw = getRaw();
+        M3UTokenizer tokenizer = new M3UTokenizer();
+        String[] values = new String[2];
+        for (int i = 0; i < count; i++) {
+            switch (tags[i]) {
+                case M3ULineClassifier.TAG_KODIPROP: {
+                    String payload = (String) payloads[i];
+                    tokenizer.tokenize(payload, 0, payload.length(),
+                            M3UParseSession.KODIPROP_SCHEMA, values);
+                    M3UParseSession.applyKodiProp(this, values);
+                    break;
+                }
+                case M3ULineClassifier.TAG_EXTVLCOPT: {
+                    String payload = (String) payloads[i];
+                    tokenizer.tokenize(payload, 0, payload.length(),
+                            M3UParseSession.EXTVLCOPT_SCHEMA, values);
+                    M3UParseSession.applyExtVlcOpt(this, values);
+                    break;
+                }
+                case M3ULineClassifier.TAG_EXTHTTP:
+                    if (payloads[i] != null) {
+                        @SuppressWarnings("unchecked")
+                        Map<String, String> header = (Map<String, String>) payloads[i];
+                        super.setHttpHeader(header);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        setRaw(raw);
+    }
+
+    @Override
+    public void setChannelName(String name) {
+        materializeInfo();
+        super.setChannelName(name);
+    }
+
+    @Override
+    public String getChannelName() {
+        materializeInfo();
+        return super.getChannelName();
+    }
+
+    @Override
+    public void setDuration(int duration) {
+        materializeInfo();
+        super.setDuration(duration);
+    }
+
+    @Override
+    public int getDuration() {
+        materializeInfo();
+        return super.getDuration();
+    }
+
+    @Override
+    public void setLogoURL(String url) {
+        materializeInfo();
+        super.setLogoURL(url);
+    }
+
+    @Override
+    public String getLogoURL() {
+        materializeInfo();
+        return super.getLogoURL();
+    }
+
+    @Override
+    public void setChannelID(String id) {
+        materializeInfo();
+        super.setChannelID(id);
+    }
+
+    @Override
+    public String getChannelID() {
+        materializeInfo();
+        return super.getChannelID();
+    }
+
+    @Override
+    public void setGroupTitle(String title) {
+        materializeInfo();
+        super.setGroupTitle(title);
+    }
+
+    @Override
+    public String getGroupTitle() {
+        materializeInfo();
+        return super.getGroupTitle();
+    }
+
+    @Override
+    public void setType(String type) {
+        materializeInfo();
+        super.setType(type);
+    }
+
+    @Override
+    public String getType() {
+        materializeInfo();
+        return super.getType();
+    }
+
+    @Override
+    public void setDLNAExtras(String profile) {
+        materializeInfo();
+        super.setDLNAExtras(profile);
+    }
+
+    @Override
+    public String getDLNAExtras() {
+        materializeInfo();
+        return super.getDLNAExtras();
+    }
+
+    @Override
+    public void setPlugin(String plugin) {
+        materializeInfo();
+        super.setPlugin(plugin);
+    }
+
+    @Override
+    public String getPlugin() {
+        materializeInfo();
+        return super.getPlugin();
+    }
+
+    @Override
+    public void setAttributes(Map<String, String> attributes) {
+        materializeInfo();
+        super.setAttributes(attributes);
+    }
+
+    @Override
+    public Map<String, String> getAttributes() {
+        materializeInfo();
+        return super.getAttributes();
+    }
+
+    @Override
+    public void setLicenseType(String licType) {
+        materializeProperties();
+        super.setLicenseType(licType);
+    }
+
+    @Override
+    public String getLicenseType() {
+        materializeProperties();
+        return super.getLicenseType();
+    }
+
+    @Override
+    public void setLicenseKeyUrl(String licKeyUrl) {
+        materializeProperties();
+        super.setLicenseKeyUrl(licKeyUrl);
+    }
+
+    @Override
+    public String getLicenseKey() {
+        materializeProperties();
+        return super.getLicenseKey();
+    }
+
+    @Override
+    public void setUserAgent(String userAgent) {
+        materializeProperties();
+        super.setUserAgent(userAgent);
+    }
+
+    @Override
+    public String getUserAgent() {
+        materializeProperties();
+        return super.getUserAgent();
+    }
+
+    @Override
+    public void setHttpHeader(Map<String, String> header) {
+        materializeProperties();
+        super.setHttpHeader(header);
+    }
+
+    @Override
+    public Map<String, String> getHttpHeader() {
+        materializeProperties();
+        return super.getHttpHeader();
+    }
+}
@@ -0,0 +1,176 @@
+package com.swinder.android.m3uparser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns the license key of an item, as found in its #KODIPROP line, into what the player needs.
+ * By default a license server URL is kept as is and a ClearKey "kid:key" pair, both in hex, is
+ * converted to a ClearKey JSON Web Key set. Conversions are memoized, playlists repeat the same
+ * keys across many channels.
+ * <p>
+ * Items resolve their license the first time {@link M3UItem#getLicenseKeyUrl()} is called,
+ * through the default resolver. Register resolvers for other license types before items are
+ * played.
+ */
+public class M3ULicenseKeyResolver {
+    private static final String TAG = M3UParser.TAG;
+    private static final int DEFAULT_CACHE_SIZE = 256;
+    private static final char[] BASE64_URL =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    private static final class DefaultResolver {
+        static final M3ULicenseKeyResolver INSTANCE = new M3ULicenseKeyResolver();
+    }
+
+    public interface Resolver {
+        /**
+         * @param licenseType
+         *            the license type of the item, e.g. "com.widevine.alpha".
+         * @param licenseKey
+         *            the license key of the item, as found in the playlist.
+         * @return the license passed to the player, null if there is none.
+         */
+        String resolve(String licenseType, String licenseKey);
+    }
+
+    private final Map<String, Resolver> mResolvers = new ConcurrentHashMap<>();
+    private final Map<String, String> mClearKeys;
+
+    public M3ULicenseKeyResolver() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize
+     *            the maximum number of ClearKey conversions kept, the least recently used are
+     *            dropped first.
+     */
+    public M3ULicenseKeyResolver(final int cacheSize) {
+        mClearKeys = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @return the resolver used by the items.
+     */
+    public static M3ULicenseKeyResolver getDefault() {
+        return DefaultResolver.INSTANCE;
+    }
+
+    /**
+     * Resolve the keys of a license type with a specific resolver.
+     *
+     * @param licenseType
+     *            the license type, as found in the playlist.
+     * @param resolver
+     *            the resolver, null to restore the default conversion.
+     */
+    public void register(String licenseType, Resolver resolver) {
+        if (resolver == null) {
+            mResolvers.remove(licenseType);
+        } else {
+            mResolvers.put(licenseType, resolver);
+        }
+    }
+
+    public String resolve(String licenseType, String licenseKey) {
+        if (licenseKey == null) {
+            return null;
+        }
+        Resolver resolver = licenseType == null ? null : mResolvers.get(licenseType);
+        if (resolver != null) {
+            return resolver.resolve(licenseType, licenseKey);
+        }
+        if (licenseKey.contains("http")) {
+            return licenseKey;
+        }
+        return resolveClearKey(licenseKey);
+    }
+
+    /**
+     * @return the ClearKey JSON Web Key set of a "kid:key" pair, null if it is not one.
+     */
+    public String resolveClearKey(String licenseKey) {
+        int idx = licenseKey.indexOf(':');
+        if (idx == -1) {
+            return null;
+        }
+        synchronized (mClearKeys) {
+            String json = mClearKeys.get(licenseKey);
+            if (json != null) {
+                return json;
+            }
+        }
+        StringBuilder builder = new StringBuilder(96);
+        builder.append("{\"keys\":[{\"kty\":\"oct\",\"k\":\"");
+        boolean valid = appendBase64Url(builder, licenseKey, idx + 1, licenseKey.length());
+        builder.append("\",\"kid\":\"");
+        valid &= appendBase64Url(builder, licenseKey, 0, idx);
+        if (!valid) {
+            M3ULog.e(TAG, ". M3UParser resolveClearKey() invalid key: " + licenseKey);
+            return null;
+        }
+        String json = builder.append("\"}],\"type\":\"temporary\"}").toString();
+        synchronized (mClearKeys) {
+            mClearKeys.put(licenseKey, json);
+        }
+        return json;
+    }
+
+    /**
+     * Append the URL safe Base64 form, without padding, of the bytes written in hex between
+     * begin and end, 3 bytes at a time straight from the hex digits.
+     *
+     * @return false if the hex is invalid.
+     */
+    private static boolean appendBase64Url(StringBuilder builder, String hex, int begin,
+                                           int end) {
+        if (((end - begin) & 1) != 0) {
+            return false;
+        }
+        int i = begin;
+        for (; i + 6 <= end; i += 6) {
+            int b0 = hexByte(hex, i);
+            int b1 = hexByte(hex, i + 2);
+            int b2 = hexByte(hex, i + 4);
+            if ((b0 | b1 | b2) < 0) {
+                return false;
+            }
+            int bits = b0 << 16 | b1 << 8 | b2;
+            builder.append(BASE64_URL[bits >>> 18]).append(BASE64_URL[(bits >>> 12) & 0x3f])
+                    .append(BASE64_URL[(bits >>> 6) & 0x3f]).append(BASE64_URL[bits & 0x3f]);
+        }
+        if (i + 2 == end) {
+            int bits = hexByte(hex, i);
+            if (bits < 0) {
+                return false;
+            }
+            builder.append(BASE64_URL[bits >>> 2]).append(BASE64_URL[(bits << 4) & 0x3f]);
+        } else if (i + 4 == end) {
+            int b0 = hexByte(hex, i);
+            int b1 = hexByte(hex, i + 2);
+            if ((b0 | b1) < 0) {
+                return false;
+            }
+            int bits = b0 << 8 | b1;
+            builder.append(BASE64_URL[bits >>> 10]).append(BASE64_URL[(bits >>> 4) & 0x3f])
+                    .append(BASE64_URL[(bits << 2) & 0x3f]);
+        }
+        return true;
+    }
+
+    /**
+     * @return the byte written by the 2 hex digits at the index, -1 if invalid.
+     */
+    private static int hexByte(String hex, int index) {
+        int high = Character.digit(hex.charAt(index), 16);
+        int low = Character.digit(hex.charAt(index + 1), 16);
+        return high < 0 || low < 0 ? -1 : high << 4 | low;
+    }
+}
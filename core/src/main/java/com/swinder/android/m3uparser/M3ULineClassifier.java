@@ -0,0 +1,133 @@
+package com.swinder.android.m3uparser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Classifies a playlist line by its tag prefix. Tags are bucketed by the first char after '#',
+ * so a line is only compared against the few prefixes sharing that char, no regular expression,
+ * substring or decoding is involved.
+ */
+final class M3ULineClassifier {
+    static final int LINE_EMPTY = -1;
+    static final int LINE_COMMENT = -2;
+    static final int LINE_URL = -3;
+
+    static final int TAG_EXTM3U = 0;
+    static final int TAG_EXTINF = 1;
+    static final int TAG_KODIPROP = 2;
+    static final int TAG_EXTVLCOPT = 3;
+    static final int TAG_EXTHTTP = 4;
+
+    static final String PREFIX_EXTM3U = "#EXTM3U";
+    static final String PREFIX_EXTINF = "#EXTINF:";
+    static final String PREFIX_KODIPROP = "#KODIPROP:";
+    static final String PREFIX_EXTVLCOPT = "#EXTVLCOPT:";
+    static final String PREFIX_EXTHTTP = "#EXTHTTP:";
+
+    private static final char PREFIX_COMMENT = '#';
+    private static final int BUCKETS = 128;
+
+    private final List<String> mPrefixes = new ArrayList<>();
+    private final int[][] mBuckets = new int[BUCKETS][];
+
+    M3ULineClassifier() {
+        register(PREFIX_EXTM3U);
+        register(PREFIX_EXTINF);
+        register(PREFIX_KODIPROP);
+        register(PREFIX_EXTVLCOPT);
+        register(PREFIX_EXTHTTP);
+    }
+
+    /**
+     * Register a tag prefix, it must be ASCII and start with '#'.
+     *
+     * @param prefix
+     *            the tag including the leading '#' and the trailing ':' if any.
+     * @return the id of the tag, as returned by {@link #classify(byte[], int, int)}.
+     */
+    int register(String prefix) {
+        if (prefix == null || prefix.length() < 2 || prefix.charAt(0) != PREFIX_COMMENT
+                || !isAscii(prefix)) {
+            throw new IllegalArgumentException("Invalid tag prefix: " + prefix);
+        }
+        int id = mPrefixes.indexOf(prefix);
+        if (id != -1) {
+            return id;
+        }
+        id = mPrefixes.size();
+        mPrefixes.add(prefix);
+        int[] bucket = mBuckets[prefix.charAt(1)];
+        int[] grown = new int[bucket == null ? 1 : bucket.length + 1];
+        // Longer prefixes first, so "#EXT-X-KEY:" wins over a shorter "#EXT-X-" for instance.
+        int n = 0;
+        boolean added = false;
+        for (int i = 0; bucket != null && i < bucket.length; i++) {
+            if (!added && mPrefixes.get(bucket[i]).length() < prefix.length()) {
+                grown[n++] = id;
+                added = true;
+            }
+            grown[n++] = bucket[i];
+        }
+        if (!added) {
+            grown[n] = id;
+        }
+        mBuckets[prefix.charAt(1)] = grown;
+        return id;
+    }
+
+    private static boolean isAscii(String prefix) {
+        for (int i = 0; i < prefix.length(); i++) {
+            if (prefix.charAt(i) >= BUCKETS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String prefix(int id) {
+        return mPrefixes.get(id);
+    }
+
+    /**
+     * Classify the trimmed region [begin, end) of a raw line. Tag prefixes are ASCII, so the
+     * bytes are compared as is whatever the charset of the playlist.
+     *
+     * @return a tag id, or one of {@link #LINE_EMPTY}, {@link #LINE_COMMENT}, {@link #LINE_URL}.
+     */
+    int classify(byte[] line, int begin, int end) {
+        if (begin >= end) {
+            return LINE_EMPTY;
+        }
+        if (line[begin] != PREFIX_COMMENT) {
+            return LINE_URL;
+        }
+        if (end - begin < 2) {
+            return LINE_COMMENT;
+        }
+        byte c = line[begin + 1];
+        int[] bucket = c >= 0 ? mBuckets[c] : null;
+        if (bucket != null) {
+            for (int id : bucket) {
+                if (matches(line, begin, end, mPrefixes.get(id))) {
+                    return id;
+                }
+            }
+        }
+        return LINE_COMMENT;
+    }
+
+    private static boolean matches(byte[] line, int begin, int end, String prefix) {
+        int length = prefix.length();
+        if (end - begin < length) {
+            return false;
+        }
+        // The first two chars were matched by the bucket lookup.
+        for (int i = 2; i < length; i++) {
+            if (line[begin + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,251 @@
+package com.swinder.android.m3uparser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+
+/**
+ * Reads a playlist line by line as raw bytes. Lines are split and trimmed on bytes, so the caller
+ * can classify them before anything is decoded and only decode the regions it keeps.
+ */
+final class M3ULineReader {
+    private static final ByteString BOM_UTF_8 = ByteString.decodeHex("efbbbf");
+    private static final ByteString BOM_UTF_16BE = ByteString.decodeHex("feff");
+    private static final ByteString BOM_UTF_16LE = ByteString.decodeHex("fffe");
+    private static final ByteString LINE_TERMINATORS = ByteString.encodeUtf8("\n\r");
+
+    private final BufferedSource mSource;
+    private final Charset mCharset;
+    private final CharsetDecoder mDecoder;
+    private byte[] mBytes = new byte[1024];
+    private int mLength;
+    /**
+     * True if the current line ended with a lone '\r'.
+     */
+    private boolean mCarriageReturn = false;
+    private char[] mChars = new char[1024];
+    private final Line mLine = new Line();
+    /**
+     * The bytes of the source read up to the end of the current line, -1 once the source was
+     * transcoded.
+     */
+    private long mOffset = 0;
+
+    /**
+     * @param source
+     *            the playlist.
+     * @param charset
+     *            the charset used when the playlist has no byte order mark, UTF-8 if null.
+     */
+    M3ULineReader(BufferedSource source, Charset charset) throws IOException {
+        this(source, charset, true);
+    }
+
+    /**
+     * @param detectBom
+     *            false when the source is not the start of the playlist, e.g. a chunk of it.
+     */
+    M3ULineReader(BufferedSource source, Charset charset, boolean detectBom) throws IOException {
+        if (charset == null) {
+            charset = StandardCharsets.UTF_8;
+        }
+        if (!detectBom) {
+            // The charset was already resolved from the start of the playlist.
+        } else if (source.rangeEquals(0, BOM_UTF_8)) {
+            source.skip(BOM_UTF_8.size());
+            mOffset = BOM_UTF_8.size();
+            charset = StandardCharsets.UTF_8;
+        } else if (source.rangeEquals(0, BOM_UTF_16BE)) {
+            source.skip(BOM_UTF_16BE.size());
+            mOffset = BOM_UTF_16BE.size();
+            charset = StandardCharsets.UTF_16BE;
+        } else if (source.rangeEquals(0, BOM_UTF_16LE)) {
+            source.skip(BOM_UTF_16LE.size());
+            mOffset = BOM_UTF_16LE.size();
+            charset = StandardCharsets.UTF_16LE;
+        }
+        if (!isAsciiCompatible(charset)) {
+            // Lines can only be split on bytes when '\n' is a single byte, wide charsets are
+            // transcoded once up front. Such playlists are rare.
+            Buffer utf8 = new Buffer();
+            utf8.writeUtf8(source.readString(charset));
+            source = utf8;
+            charset = StandardCharsets.UTF_8;
+            mOffset = -1;
+        }
+        mSource = source;
+        mCharset = charset;
+        mDecoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    static boolean isAsciiCompatible(Charset charset) {
+        byte[] probe = "#\n".getBytes(charset);
+        return probe.length == 2 && probe[0] == '#' && probe[1] == '\n';
+    }
+
+    /**
+     * Read the next line. Lines end with '\n', "\r\n" or a lone '\r' as with
+     * BufferedReader#readLine(); the '\r' of "\r\n" is part of the line, the other terminators
+     * are not.
+     *
+     * @return false at the end of the playlist.
+     */
+    boolean next() throws IOException {
+        long newline = mSource.indexOfElement(LINE_TERMINATORS);
+        long length;
+        mCarriageReturn = false;
+        if (newline == -1) {
+            if (mSource.exhausted()) {
+                return false;
+            }
+            length = mSource.getBuffer().size();
+        } else if (mSource.getBuffer().getByte(newline) == '\n') {
+            length = newline;
+        } else if (mSource.request(newline + 2)
+                && mSource.getBuffer().getByte(newline + 1) == '\n') {
+            // The '\r' is kept, so a raw record is copied as it was read.
+            newline++;
+            length = newline;
+        } else {
+            mCarriageReturn = true;
+            length = newline;
+        }
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Line too long: " + length);
+        }
+        mLength = (int) length;
+        if (mBytes.length < mLength) {
+            mBytes = new byte[Math.max(mLength, mBytes.length * 2)];
+        }
+        for (int read = 0; read < mLength; ) {
+            int count = mSource.read(mBytes, read, mLength - read);
+            if (count == -1) {
+                throw new IOException("Unexpected end of playlist");
+            }
+            read += count;
+        }
+        if (newline != -1) {
+            mSource.skip(1);
+        }
+        if (mOffset != -1) {
+            mOffset += newline != -1 ? mLength + 1 : mLength;
+        }
+        return true;
+    }
+
+    /**
+     * @return the offset of the end of the current line, its terminator included, in the bytes
+     *         of the source; -1 if the source was transcoded from a wide charset.
+     */
+    long offset() {
+        return mOffset;
+    }
+
+    /**
+     * @return the byte which ended the current line, '\n' for the last line if it had none.
+     */
+    byte terminator() {
+        return mCarriageReturn ? (byte) '\r' : (byte) '\n';
+    }
+
+    /**
+     * @return the charset lines are decoded with, UTF-8 for wide charsets which are transcoded.
+     */
+    Charset charset() {
+        return mCharset;
+    }
+
+    byte[] bytes() {
+        return mBytes;
+    }
+
+    int length() {
+        return mLength;
+    }
+
+    /**
+     * @return the index of the first byte which is not a white space, as String#trim() does.
+     */
+    int begin() {
+        int begin = 0;
+        while (begin < mLength && (mBytes[begin] & 0xff) <= ' ') {
+            begin++;
+        }
+        return begin;
+    }
+
+    /**
+     * @return the end (exclusive) of the line ignoring trailing white spaces and '\r'.
+     */
+    int end(int begin) {
+        int end = mLength;
+        while (end > begin && (mBytes[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    String string(int begin, int end) {
+        return new String(mBytes, begin, end - begin, mCharset);
+    }
+
+    /**
+     * Decode the region [begin, end) of the current line into a reused buffer. The returned
+     * sequence is only valid until the next call.
+     */
+    CharSequence decode(int begin, int end) {
+        int length = end - begin;
+        if (mChars.length < length) {
+            mChars = new char[Math.max(length, mChars.length * 2)];
+        }
+        int i = 0;
+        // Fast path for ASCII which is the bulk of any playlist.
+        while (i < length && mBytes[begin + i] >= 0) {
+            mChars[i] = (char) mBytes[begin + i];
+            i++;
+        }
+        if (i < length) {
+            CharBuffer out = CharBuffer.wrap(mChars, i, mChars.length - i);
+            mDecoder.reset();
+            mDecoder.decode(ByteBuffer.wrap(mBytes, begin + i, length - i), out, true);
+            mDecoder.flush(out);
+            i = out.position();
+        }
+        mLine.mCount = i;
+        return mLine;
+    }
+
+    private final class Line implements CharSequence {
+        private int mCount;
+
+        @Override
+        public int length() {
+            return mCount;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return mChars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(mChars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(mChars, 0, mCount);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.swinder.android.m3uparser;
+
+/**
+ * Where the parser logs to, so its core does not depend on Android. Android's Log is used when it
+ * is available, System.err otherwise, e.g. on a server or in a benchmark.
+ * <p>
+ * Messages below the level are dropped, code logging per line checks {@link #isLoggable(int)}
+ * first so the message is not even built. Use {@link M3UParser.M3UParseListener} for numbers.
+ */
+public final class M3ULog {
+    public static final int INFO = 1;
+    public static final int ERROR = 2;
+    public static final int NONE = 3;
+    private static final String ANDROID_LOGGER = "com.swinder.android.m3uparser.M3UAndroidLogger";
+
+    public interface Logger {
+        void i(String tag, String msg);
+
+        void e(String tag, String msg);
+    }
+
+    private static volatile Logger sLogger = defaultLogger();
+    private static volatile int sLevel = INFO;
+
+    private M3ULog() {
+    }
+
+    /**
+     * @param logger
+     *            the logger, null to restore the default one.
+     */
+    public static void setLogger(Logger logger) {
+        sLogger = logger != null ? logger : defaultLogger();
+    }
+
+    /**
+     * @param level
+     *            INFO, ERROR or NONE, INFO by default.
+     */
+    public static void setLevel(int level) {
+        sLevel = level;
+    }
+
+    public static boolean isLoggable(int level) {
+        return level >= sLevel;
+    }
+
+    static void i(String tag, String msg) {
+        if (sLevel <= INFO) {
+            sLogger.i(tag, msg);
+        }
+    }
+
+    static void e(String tag, String msg) {
+        if (sLevel <= ERROR) {
+            sLogger.e(tag, msg);
+        }
+    }
+
+    private static Logger defaultLogger() {
+        try {
+            Class.forName("android.util.Log");
+            // Loaded by name, the core compiles without the Android SDK.
+            return (Logger) Class.forName(ANDROID_LOGGER).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return new Logger() {
+                @Override
+                public void i(String tag, String msg) {
+                    System.err.println("I/" + tag + ": " + msg);
+                }
+
+                @Override
+                public void e(String tag, String msg) {
+                    System.err.println("E/" + tag + ": " + msg);
+                }
+            };
+        }
+    }
+}
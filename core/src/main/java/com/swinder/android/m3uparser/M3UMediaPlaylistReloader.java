@@ -0,0 +1,501 @@
+package com.swinder.android.m3uparser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * Follows a live HLS media playlist: reloads it as often as its #EXT-X-TARGETDURATION asks, and
+ * hands the listener only the segments it was not handed yet. Segments are told apart by their
+ * media sequence number, counted from the #EXT-X-MEDIA-SEQUENCE of the playlist, so the lines of
+ * the segments already delivered are skipped on their tag prefix without being decoded. The last
+ * segments delivered are kept in a bounded window. Reloads stop at #EXT-X-ENDLIST.
+ * <p>
+ * Only the tags needed to follow the playlist are read, a segment has its duration, title, URI
+ * and discontinuity, not its key, byte range or date. Master playlists are not supported.
+ * <pre>
+ * M3UMediaPlaylistReloader reloader = new M3UMediaPlaylistReloader(parser, url, segments -&gt; {
+ *     for (M3USegment segment : segments) {
+ *         download(segment.getURI());
+ *     }
+ * });
+ * reloader.start();
+ * </pre>
+ */
+public class M3UMediaPlaylistReloader {
+    private static final String TAG = M3UParser.TAG;
+
+    /**
+     * The reload interval until the playlist gives its target duration.
+     */
+    private static final long DEFAULT_TARGET_DURATION_MILLIS = 6000;
+    private static final int DEFAULT_WINDOW_SIZE = 32;
+
+    private static final M3ULineClassifier CLASSIFIER = new M3ULineClassifier();
+    private static final int TAG_TARGET_DURATION =
+            CLASSIFIER.register("#EXT-X-TARGETDURATION:");
+    private static final int TAG_MEDIA_SEQUENCE = CLASSIFIER.register("#EXT-X-MEDIA-SEQUENCE:");
+    private static final int TAG_DISCONTINUITY = CLASSIFIER.register("#EXT-X-DISCONTINUITY");
+    private static final int TAG_ENDLIST = CLASSIFIER.register("#EXT-X-ENDLIST");
+
+    static {
+        // Longer prefixes win, so it is not taken for #EXT-X-DISCONTINUITY.
+        CLASSIFIER.register("#EXT-X-DISCONTINUITY-SEQUENCE:");
+    }
+
+    /**
+     * Schedules the reloads of every reloader, created on first use. The reloads themselves run
+     * on the OkHttp dispatcher.
+     */
+    private static final class Scheduler {
+        static final ScheduledExecutorService INSTANCE =
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "M3UMediaPlaylistReloader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public interface M3USegmentListener {
+        /**
+         * When a reload found segments which were not delivered yet, this method will be called
+         * from an OkHttp thread, one call at a time.
+         *
+         * @param segments
+         *            the new segments, in playlist order.
+         */
+        void onNewSegments(List<M3USegment> segments);
+
+        /**
+         * When the playlist ended with #EXT-X-ENDLIST, this method will be called after its last
+         * segments were delivered. The playlist is not reloaded anymore.
+         */
+        default void onEndList() {
+        }
+
+        /**
+         * When a reload failed, this method will be called. The playlist is reloaded again after
+         * its target duration.
+         */
+        default void onReloadFailed(String error) {
+        }
+    }
+
+    private final M3UParser mParser;
+    private final HttpUrl mUrl;
+    private final M3USegmentListener mListener;
+    private OkHttpClient mClient = null;
+
+    private M3USegment[] mWindow = new M3USegment[DEFAULT_WINDOW_SIZE];
+    private int mWindowStart = 0;
+    private int mWindowCount = 0;
+    private long mTargetDurationMillis = DEFAULT_TARGET_DURATION_MILLIS;
+    /**
+     * The media sequence of the first segment of the last reload, -1 before the first one.
+     */
+    private long mMediaSequence = -1;
+    /**
+     * The media sequence of the last segment delivered, -1 if none was.
+     */
+    private long mLastSequence = -1;
+    private String mETag = null;
+    private String mLastModified = null;
+    private boolean mEnded = false;
+    private boolean mRunning = false;
+    /**
+     * Bumped by every start and stop, so a reload of a previous run is ignored.
+     */
+    private int mGeneration = 0;
+    private ScheduledFuture<?> mScheduled = null;
+    private Call mCall = null;
+
+    /**
+     * @param parser
+     *            the parser whose HTTP client and connections are used.
+     * @param url
+     *            the media playlist.
+     * @throws IllegalArgumentException
+     *             if the URL is not an HTTP or HTTPS URL.
+     */
+    public M3UMediaPlaylistReloader(M3UParser parser, String url, M3USegmentListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("No listener");
+        }
+        mParser = parser;
+        mUrl = HttpUrl.get(url);
+        mListener = listener;
+    }
+
+    /**
+     * @param size
+     *            how many of the last segments delivered {@link #getWindow()} keeps, 32 by
+     *            default.
+     */
+    public synchronized void setWindowSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size < 1: " + size);
+        }
+        List<M3USegment> window = getWindow();
+        mWindow = new M3USegment[size];
+        mWindowStart = 0;
+        mWindowCount = 0;
+        for (int i = Math.max(0, window.size() - size); i < window.size(); i++) {
+            keep(window.get(i));
+        }
+    }
+
+    /**
+     * @return the last segments delivered, in playlist order.
+     */
+    public synchronized List<M3USegment> getWindow() {
+        List<M3USegment> window = new ArrayList<>(mWindowCount);
+        for (int i = 0; i < mWindowCount; i++) {
+            window.add(mWindow[(mWindowStart + i) % mWindow.length]);
+        }
+        return window;
+    }
+
+    /**
+     * @return the reload interval given by #EXT-X-TARGETDURATION.
+     */
+    public synchronized long getTargetDurationMillis() {
+        return mTargetDurationMillis;
+    }
+
+    /**
+     * @return true once the playlist ended with #EXT-X-ENDLIST.
+     */
+    public synchronized boolean isEnded() {
+        return mEnded;
+    }
+
+    /**
+     * Load the playlist now, then reload it until {@link #stop()} or its end. After a stop, the
+     * segments delivered before are not delivered again.
+     */
+    public synchronized void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mGeneration++;
+        M3ULog.i(TAG, ". M3UParser reload() start: " + mUrl);
+        schedule(mGeneration, 0);
+    }
+
+    /**
+     * Stop reloading, the reload in progress is cancelled.
+     */
+    public synchronized void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        mGeneration++;
+        if (mScheduled != null) {
+            mScheduled.cancel(false);
+            mScheduled = null;
+        }
+        if (mCall != null) {
+            mCall.cancel();
+            mCall = null;
+        }
+    }
+
+    /**
+     * Schedule the next reload, must be called while holding the lock.
+     */
+    private void schedule(int generation, long delayMillis) {
+        if (generation != mGeneration) {
+            return;
+        }
+        mScheduled = Scheduler.INSTANCE.schedule(() -> reload(generation),
+                Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+    private void reload(int generation) {
+        Call call;
+        synchronized (this) {
+            if (generation != mGeneration) {
+                return;
+            }
+            Request.Builder builder = new Request.Builder().url(mUrl);
+            // A live playlist usually changed, but the server may still save sending it again.
+            if (mETag != null) {
+                builder.header("If-None-Match", mETag);
+            } else if (mLastModified != null) {
+                builder.header("If-Modified-Since", mLastModified);
+            }
+            call = client().newCall(builder.build());
+            mCall = call;
+        }
+        final long start = System.nanoTime();
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException ex) {
+                failed(generation, start, ex.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response r = response) {
+                    if (r.code() == 304) {
+                        loaded(generation, start, null, r);
+                        return;
+                    }
+                    if (!r.isSuccessful()) {
+                        failed(generation, start, "HTTP " + r.code() + " " + r.message());
+                        return;
+                    }
+                    // Media playlists are small, it is read before the lock is taken.
+                    Buffer playlist = new Buffer();
+                    r.body().source().readAll(playlist);
+                    loaded(generation, start, playlist, r);
+                } catch (IOException ex) {
+                    failed(generation, start, ex.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * @param playlist
+     *            the playlist, null if it was not modified.
+     */
+    private void loaded(int generation, long start, Buffer playlist, Response response)
+            throws IOException {
+        List<M3USegment> segments;
+        boolean ended;
+        synchronized (this) {
+            if (generation != mGeneration) {
+                return;
+            }
+            mCall = null;
+            if (playlist != null) {
+                segments = update(playlist, response.request().url());
+                mETag = response.header("ETag");
+                mLastModified = response.header("Last-Modified");
+            } else {
+                segments = Collections.emptyList();
+            }
+            ended = mEnded;
+            if (ended) {
+                mRunning = false;
+            }
+        }
+        M3ULog.i(TAG, ". M3UParser reload() url: " + mUrl + ", code: " + response.code()
+                + ", new segments: " + segments.size() + ", ended: " + ended);
+        if (!segments.isEmpty()) {
+            mListener.onNewSegments(segments);
+        }
+        if (ended) {
+            mListener.onEndList();
+            return;
+        }
+        synchronized (this) {
+            // An unchanged playlist is reloaded after half the target duration only.
+            long delay = segments.isEmpty() ? mTargetDurationMillis / 2 : mTargetDurationMillis;
+            schedule(generation, delay - elapsedMillis(start));
+        }
+    }
+
+    private void failed(int generation, long start, String error) {
+        synchronized (this) {
+            if (generation != mGeneration) {
+                return;
+            }
+            mCall = null;
+        }
+        M3ULog.e(TAG, ". M3UParser reload() url: " + mUrl + ", error: " + error);
+        mListener.onReloadFailed(error);
+        synchronized (this) {
+            schedule(generation, mTargetDurationMillis - elapsedMillis(start));
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Read a reload of the playlist, must be called while holding the lock.
+     *
+     * @param base
+     *            the URL the playlist was loaded from, the segment URIs are relative to it.
+     * @return the segments which were not delivered yet.
+     */
+    List<M3USegment> update(BufferedSource source, HttpUrl base) throws IOException {
+        M3ULineReader reader = new M3ULineReader(source, StandardCharsets.UTF_8);
+        List<M3USegment> segments = Collections.emptyList();
+        long sequence = 0;
+        // The segments to skip, -1 until the first segment.
+        long skip = -1;
+        double duration = 0;
+        String title = null;
+        boolean discontinuity = false;
+        boolean ended = false;
+        while (reader.next()) {
+            byte[] bytes = reader.bytes();
+            int begin = reader.begin();
+            int end = reader.end(begin);
+            int tag = CLASSIFIER.classify(bytes, begin, end);
+            if (tag == M3ULineClassifier.LINE_EMPTY) {
+                continue;
+            }
+            boolean segment = tag == M3ULineClassifier.LINE_URL
+                    || tag == M3ULineClassifier.TAG_EXTINF || tag == TAG_DISCONTINUITY;
+            if (skip == -1 && segment) {
+                skip = delivered(sequence);
+            }
+            if (skip > 0) {
+                // A segment already delivered, its lines are only counted.
+                if (tag == M3ULineClassifier.LINE_URL) {
+                    skip--;
+                    sequence++;
+                } else if (tag == TAG_ENDLIST) {
+                    ended = true;
+                }
+                continue;
+            }
+            if (tag == TAG_TARGET_DURATION) {
+                long seconds = parseLong(bytes, begin + "#EXT-X-TARGETDURATION:".length(), end);
+                if (seconds > 0) {
+                    mTargetDurationMillis = TimeUnit.SECONDS.toMillis(seconds);
+                }
+            } else if (tag == TAG_MEDIA_SEQUENCE) {
+                long value = parseLong(bytes, begin + "#EXT-X-MEDIA-SEQUENCE:".length(), end);
+                if (value >= 0) {
+                    sequence = value;
+                }
+            } else if (tag == M3ULineClassifier.TAG_EXTINF) {
+                int offset = begin + M3ULineClassifier.PREFIX_EXTINF.length();
+                int comma = offset;
+                while (comma < end && bytes[comma] != ',') {
+                    comma++;
+                }
+                duration = parseDecimal(bytes, offset, comma);
+                title = comma + 1 < end ? reader.string(comma + 1, end) : null;
+            } else if (tag == TAG_DISCONTINUITY) {
+                discontinuity = true;
+            } else if (tag == TAG_ENDLIST) {
+                ended = true;
+            } else if (tag == M3ULineClassifier.LINE_URL) {
+                if (sequence > mLastSequence) {
+                    M3USegment newSegment = new M3USegment(sequence, duration, title,
+                            resolve(base, reader.string(begin, end)), discontinuity);
+                    if (segments.isEmpty()) {
+                        segments = new ArrayList<>();
+                    }
+                    segments.add(newSegment);
+                    keep(newSegment);
+                    mLastSequence = sequence;
+                }
+                sequence++;
+                duration = 0;
+                title = null;
+                discontinuity = false;
+            }
+        }
+        if (skip == -1) {
+            delivered(sequence);
+        }
+        mEnded = ended;
+        return segments;
+    }
+
+    /**
+     * @param mediaSequence
+     *            the media sequence of the first segment of the playlist.
+     * @return how many segments of the playlist were already delivered.
+     */
+    private long delivered(long mediaSequence) {
+        if (mediaSequence < mMediaSequence) {
+            // Media sequences never go back unless the stream was restarted.
+            M3ULog.i(TAG, ". M3UParser reload() url: " + mUrl + ", media sequence went back: "
+                    + mMediaSequence + " -> " + mediaSequence);
+            mLastSequence = mediaSequence - 1;
+            mWindowStart = 0;
+            mWindowCount = 0;
+        }
+        mMediaSequence = mediaSequence;
+        return Math.max(0, mLastSequence - mediaSequence + 1);
+    }
+
+    private void keep(M3USegment segment) {
+        if (mWindowCount == mWindow.length) {
+            mWindow[mWindowStart] = segment;
+            mWindowStart = (mWindowStart + 1) % mWindow.length;
+        } else {
+            mWindow[(mWindowStart + mWindowCount++) % mWindow.length] = segment;
+        }
+    }
+
+    private static String resolve(HttpUrl base, String uri) {
+        HttpUrl url = base != null ? base.resolve(uri) : null;
+        return url != null ? url.toString() : uri;
+    }
+
+    /**
+     * @return the decimal integer of the region, -1 if it is not one.
+     */
+    private static long parseLong(byte[] bytes, int begin, int end) {
+        if (begin >= end) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = begin; i < end; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9' || value > (Long.MAX_VALUE - 9) / 10) {
+                return -1;
+            }
+            value = value * 10 + (bytes[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * @return the decimal number at the start of the region, 0 if there is none.
+     */
+    private static double parseDecimal(byte[] bytes, int begin, int end) {
+        double value = 0;
+        double divisor = 0;
+        for (int i = begin; i < end; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                if (divisor != 0) {
+                    divisor *= 10;
+                }
+            } else if (b == '.' && divisor == 0) {
+                divisor = 1;
+            } else {
+                break;
+            }
+        }
+        return divisor > 1 ? value / divisor : value;
+    }
+
+    private synchronized OkHttpClient client() {
+        if (mClient == null) {
+            // A live playlist changes on every reload, caching it is a waste.
+            mClient = mParser.client().newBuilder()
+                    .cache(null)
+                    .build();
+        }
+        return mClient;
+    }
+}
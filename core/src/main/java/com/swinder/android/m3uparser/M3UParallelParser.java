@@ -0,0 +1,287 @@
+package com.swinder.android.m3uparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+
+/**
+ * Parses a local playlist in chunks on a fork-join pool. The file is split right after stream URL
+ * lines, where a record always ends, so every chunk can be parsed by its own session. Results are
+ * handed to the handler on the calling thread, either in file order or as chunks complete.
+ */
+final class M3UParallelParser {
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private final M3UParser mParser;
+    private final ForkJoinPool mPool;
+
+    M3UParallelParser(M3UParser parser, ForkJoinPool pool) {
+        mParser = parser;
+        mPool = pool;
+    }
+
+    /**
+     * @return null if the file must be parsed sequentially, e.g. a UTF-16 playlist.
+     */
+    Boolean parse(File file, M3UParser.M3UHandler handler, boolean parseFull, boolean ordered,
+                  Charset charset, M3UParseMetrics metrics) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            charset = effectiveCharset(channel, charset);
+            if (charset == null) {
+                return null;
+            }
+            List<long[]> chunks = split(channel, size);
+            // Mapped, the file is not read through a source.
+            metrics.onRead(size, 0);
+            boolean success = handler.onStartEXTM3U();
+            int window = mPool.getParallelism() * 2;
+            ExecutorCompletionService<Chunk> completion = new ExecutorCompletionService<>(mPool);
+            ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+            // Cancelling a fork-join task does not interrupt it, the chunks poll this instead.
+            AtomicBoolean cancelled = new AtomicBoolean();
+            int next = 0;
+            try {
+                while (next < chunks.size() || !pending.isEmpty()) {
+                    while (next < chunks.size() && pending.size() < window) {
+                        long[] range = chunks.get(next);
+                        Callable<Chunk> task = new ChunkTask(channel, range[0], range[1], next,
+                                parseFull, charset, cancelled);
+                        pending.add(ordered ? mPool.submit(task) : completion.submit(task));
+                        next++;
+                    }
+                    Future<Chunk> done = ordered ? pending.poll() : completion.take();
+                    if (!ordered) {
+                        pending.remove(done);
+                    }
+                    Chunk chunk = done.get();
+                    metrics.add(chunk.mMetrics);
+                    success &= chunk.deliver(handler);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Parse interrupted", ex);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            } finally {
+                cancelled.set(true);
+                for (Future<Chunk> future : pending) {
+                    future.cancel(true);
+                }
+            }
+            return success & handler.onReadEXTM3U();
+        }
+    }
+
+    private static Charset effectiveCharset(FileChannel channel, Charset charset)
+            throws IOException {
+        ByteBuffer bom = ByteBuffer.allocate(3);
+        channel.read(bom, 0);
+        bom.flip();
+        if (bom.remaining() == 3 && (bom.get(0) & 0xff) == 0xef && (bom.get(1) & 0xff) == 0xbb
+                && (bom.get(2) & 0xff) == 0xbf) {
+            return StandardCharsets.UTF_8;
+        }
+        if (bom.remaining() >= 2 && ((bom.get(0) & 0xff) == 0xfe && (bom.get(1) & 0xff) == 0xff
+                || (bom.get(0) & 0xff) == 0xff && (bom.get(1) & 0xff) == 0xfe)) {
+            return null;
+        }
+        if (charset == null) {
+            return StandardCharsets.UTF_8;
+        }
+        return M3ULineReader.isAsciiCompatible(charset) ? charset : null;
+    }
+
+    private List<long[]> split(FileChannel channel, long size) throws IOException {
+        long target = Math.max(MIN_CHUNK_SIZE,
+                size / ((long) mPool.getParallelism() * CHUNKS_PER_THREAD));
+        List<long[]> chunks = new ArrayList<>();
+        ByteBuffer scan = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long start = 0;
+        while (start < size) {
+            long end = start + target >= size ? size : nextRecord(channel, start + target, size,
+                    scan);
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Find the first line after {@code from} that is a stream URL.
+     *
+     * @return the offset right after that line, or the size of the file.
+     */
+    private static long nextRecord(FileChannel channel, long from, long size, ByteBuffer scan)
+            throws IOException {
+        final int skipLine = 0;
+        final int lineStart = 1;
+        final int urlLine = 2;
+        final int otherLine = 3;
+        final int urlLineEnd = 4;
+        // The offset may be in the middle of a line, the first one is never looked at.
+        int state = skipLine;
+        long position = from;
+        while (position < size) {
+            scan.clear();
+            int read = channel.read(scan, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                int b = scan.get(i) & 0xff;
+                if (state == urlLineEnd) {
+                    // The URL line ended with '\r', a '\n' right after it belongs to it.
+                    return b == '\n' ? position + i + 1 : position + i;
+                }
+                if (b == '\n' || b == '\r') {
+                    if (state == urlLine) {
+                        if (b == '\n') {
+                            return position + i + 1;
+                        }
+                        state = urlLineEnd;
+                    } else {
+                        state = lineStart;
+                    }
+                } else if (state == lineStart && b > ' ') {
+                    state = b == '#' ? otherLine : urlLine;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private final class ChunkTask implements Callable<Chunk> {
+        private final FileChannel mChannel;
+        private final long mStart;
+        private final long mEnd;
+        private final int mIndex;
+        private final boolean mParseFull;
+        private final Charset mCharset;
+        private final AtomicBoolean mCancelled;
+
+        ChunkTask(FileChannel channel, long start, long end, int index, boolean parseFull,
+                  Charset charset, AtomicBoolean cancelled) {
+            mChannel = channel;
+            mStart = start;
+            mEnd = end;
+            mIndex = index;
+            mParseFull = parseFull;
+            mCharset = charset;
+            mCancelled = cancelled;
+        }
+
+        @Override
+        public Chunk call() throws IOException {
+            Chunk chunk = new Chunk();
+            ByteBuffer bytes = mChannel.map(FileChannel.MapMode.READ_ONLY, mStart, mEnd - mStart);
+            BufferedSource source = Okio.buffer(new ByteBufferSource(bytes));
+            // Only the first chunk may start with a byte order mark.
+            M3ULineReader reader = new M3ULineReader(source, mCharset, mIndex == 0);
+            M3UParseSession session = mParser.newSession(chunk, mParseFull, chunk.mMetrics);
+            boolean success = true;
+            while (reader.next()) {
+                if (mCancelled.get()) {
+                    throw new IOException("Parse cancelled");
+                }
+                success &= session.parseLine(reader);
+            }
+            success &= session.finish();
+            chunk.mSuccess = success;
+            return chunk;
+        }
+    }
+
+    /**
+     * Collects what a chunk would have handed to the handler, until it can be delivered in turn.
+     */
+    private static final class Chunk implements M3UParser.M3UHandler {
+        private final List<Object> mEvents = new ArrayList<>();
+        private final M3UParseMetrics mMetrics = new M3UParseMetrics(null);
+        private boolean mSuccess;
+
+        @Override
+        public boolean onSetEXTM3U(M3UHead header) {
+            mEvents.add(header);
+            return true;
+        }
+
+        @Override
+        public boolean onReadEXTM3U() {
+            return true;
+        }
+
+        @Override
+        public boolean onReadEXTINF(M3UItem item) {
+            mEvents.add(item);
+            return true;
+        }
+
+        boolean deliver(M3UParser.M3UHandler handler) {
+            boolean success = mSuccess;
+            for (Object event : mEvents) {
+                if (event instanceof M3UItem) {
+                    success &= handler.onReadEXTINF((M3UItem) event);
+                } else {
+                    success &= handler.onSetEXTM3U((M3UHead) event);
+                }
+            }
+            mEvents.clear();
+            return success;
+        }
+    }
+
+    private static final class ByteBufferSource implements Source {
+        private final ByteBuffer mBytes;
+
+        ByteBufferSource(ByteBuffer bytes) {
+            mBytes = bytes;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            if (!mBytes.hasRemaining()) {
+                return -1;
+            }
+            int count = (int) Math.min(byteCount, mBytes.remaining());
+            ByteBuffer slice = mBytes.duplicate();
+            slice.limit(slice.position() + count);
+            sink.write(slice);
+            mBytes.position(mBytes.position() + count);
+            return count;
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
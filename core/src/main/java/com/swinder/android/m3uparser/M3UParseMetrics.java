@@ -0,0 +1,235 @@
+package com.swinder.android.m3uparser;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * What a parse did and how long it took, handed to {@link M3UParser.M3UParseListener} once the
+ * parse is over.
+ * <p>
+ * The download time is the time spent waiting for the playlist in reads, the parse time is the
+ * rest: both overlap with the network, as the playlist is parsed while it is downloaded.
+ */
+public final class M3UParseMetrics {
+    /**
+     * A line which could not be parsed.
+     */
+    public static final int ERROR_LINE = 0;
+    /**
+     * An #EXTHTTP payload which is not a JSON object.
+     */
+    public static final int ERROR_EXTHTTP = 1;
+    /**
+     * An answer other than 200 OK.
+     */
+    public static final int ERROR_HTTP = 2;
+    /**
+     * The playlist could not be downloaded or read to its end.
+     */
+    public static final int ERROR_IO = 3;
+    private static final int ERROR_CATEGORIES = 4;
+
+    private final String mSource;
+    private final long mStartNanos = System.nanoTime();
+    private long mFirstByteNanos = -1;
+    private long mDownloadNanos = 0;
+    private long mTotalNanos = 0;
+    private long mBytes = 0;
+    private int mItems = 0;
+    private int mSkippedItems = 0;
+    private int mInvalidURLItems = 0;
+    private int mFilteredItems = 0;
+    private int[] mTags = new int[M3ULineClassifier.TAG_EXTHTTP + 1];
+    private final int[] mErrors = new int[ERROR_CATEGORIES];
+
+    M3UParseMetrics(String source) {
+        mSource = source;
+    }
+
+    /**
+     * @return the URL or file of the playlist, null for a source opened by the caller.
+     */
+    public String getSource() {
+        return mSource;
+    }
+
+    /**
+     * @return the nanoseconds from the start of the parse to the first byte of the playlist, -1
+     *         if nothing was read.
+     */
+    public long getTimeToFirstByteNanos() {
+        return mFirstByteNanos == -1 ? -1 : mFirstByteNanos - mStartNanos;
+    }
+
+    public long getDownloadNanos() {
+        return mDownloadNanos;
+    }
+
+    public long getParseNanos() {
+        return Math.max(0, mTotalNanos - mDownloadNanos);
+    }
+
+    public long getTotalNanos() {
+        return mTotalNanos;
+    }
+
+    public long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * @return the items handed to the handler.
+     */
+    public int getItems() {
+        return mItems;
+    }
+
+    public double getBytesPerSecond() {
+        return perSecond(mBytes);
+    }
+
+    public double getItemsPerSecond() {
+        return perSecond(mItems);
+    }
+
+    /**
+     * @return the records dropped for lack of a stream URL, including those with the invalid
+     *         placeholder URL.
+     */
+    public int getSkippedItems() {
+        return mSkippedItems;
+    }
+
+    /**
+     * @return the records dropped because of the "http://0.0.0.0:1234" placeholder URL.
+     */
+    public int getInvalidURLItems() {
+        return mInvalidURLItems;
+    }
+
+    /**
+     * @return the records rejected by the {@link M3UFilter} of the parser.
+     */
+    public int getFilteredItems() {
+        return mFilteredItems;
+    }
+
+    /**
+     * @return the number of lines with the tag, one of the M3ULineClassifier TAG_* or a tag
+     *         registered by {@link M3UParser#registerTag(String, M3UParser.M3UTagParser)}.
+     */
+    int getTagCount(int tag) {
+        return tag < mTags.length ? mTags[tag] : 0;
+    }
+
+    public int getExtInfCount() {
+        return mTags[M3ULineClassifier.TAG_EXTINF];
+    }
+
+    public int getKodiPropCount() {
+        return mTags[M3ULineClassifier.TAG_KODIPROP];
+    }
+
+    public int getExtVlcOptCount() {
+        return mTags[M3ULineClassifier.TAG_EXTVLCOPT];
+    }
+
+    public int getExtHttpCount() {
+        return mTags[M3ULineClassifier.TAG_EXTHTTP];
+    }
+
+    /**
+     * @return the lines with registered tags.
+     */
+    public int getCustomTagCount() {
+        int count = 0;
+        for (int tag = M3ULineClassifier.TAG_EXTHTTP + 1; tag < mTags.length; tag++) {
+            count += mTags[tag];
+        }
+        return count;
+    }
+
+    /**
+     * @param category
+     *            one of the ERROR_* constants.
+     */
+    public int getErrorCount(int category) {
+        return mErrors[category];
+    }
+
+    void countTag(int tag) {
+        if (tag >= mTags.length) {
+            mTags = Arrays.copyOf(mTags, tag + 1);
+        }
+        mTags[tag]++;
+    }
+
+    void countItem() {
+        mItems++;
+    }
+
+    void countSkipped(boolean invalidURL) {
+        mSkippedItems++;
+        if (invalidURL) {
+            mInvalidURLItems++;
+        }
+    }
+
+    void countFiltered() {
+        mFilteredItems++;
+    }
+
+    void countError(int category) {
+        mErrors[category]++;
+    }
+
+    void onRead(long bytes, long nanos) {
+        if (mFirstByteNanos == -1 && bytes > 0) {
+            mFirstByteNanos = System.nanoTime();
+        }
+        mBytes += Math.max(bytes, 0);
+        mDownloadNanos += nanos;
+    }
+
+    void finish() {
+        mTotalNanos = System.nanoTime() - mStartNanos;
+    }
+
+    /**
+     * Add the counts of the chunk of a parallel parse.
+     */
+    void add(M3UParseMetrics other) {
+        mItems += other.mItems;
+        mSkippedItems += other.mSkippedItems;
+        mInvalidURLItems += other.mInvalidURLItems;
+        mFilteredItems += other.mFilteredItems;
+        for (int tag = 0; tag < other.mTags.length; tag++) {
+            if (other.mTags[tag] != 0) {
+                if (tag >= mTags.length) {
+                    mTags = Arrays.copyOf(mTags, tag + 1);
+                }
+                mTags[tag] += other.mTags[tag];
+            }
+        }
+        for (int i = 0; i < ERROR_CATEGORIES; i++) {
+            mErrors[i] += other.mErrors[i];
+        }
+    }
+
+    private double perSecond(long count) {
+        return mTotalNanos == 0 ? 0 : count * 1e9 / mTotalNanos;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "[M3UParseMetrics]: Source: " + mSource + ", TTFB: "
+                + getTimeToFirstByteNanos() / 1000000 + "ms, Download: " + mDownloadNanos / 1000000
+                + "ms, Parse: " + getParseNanos() / 1000000 + "ms, Bytes: " + mBytes + ", Items: "
+                + mItems + ", Skipped: " + mSkippedItems + " (" + mInvalidURLItems
+                + " invalid URL), Filtered: " + mFilteredItems + ", EXTINF: " + getExtInfCount() + ", KODIPROP: " + getKodiPropCount()
+                + ", EXTVLCOPT: " + getExtVlcOptCount() + ", EXTHTTP: " + getExtHttpCount()
+                + ", Custom: " + getCustomTagCount() + ", Errors: " + Arrays.toString(mErrors);
+    }
+}
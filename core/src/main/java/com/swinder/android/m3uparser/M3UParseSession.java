@@ -0,0 +1,516 @@
+package com.swinder.android.m3uparser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okio.Buffer;
+
+/**
+ * The state of a single parse: the record being built and the buffers used to build it. Each
+ * parse, or each chunk of a parallel parse, gets its own session so a M3UParser can be shared.
+ */
+final class M3UParseSession {
+    private static final String TAG = M3UParser.TAG;
+    private static final String ATTR_NAME = "name";
+    private static final String ATTR_TYPE = "type";
+    private static final String ATTR_DLNA_EXTRAS = "dlna_extras";
+    private static final String ATTR_PLUGIN = "plugin";
+    private static final String ATTR_TVG_URL = "x-tvg-url";
+    private static final String ATTR_CHANNEL_NAME = M3UTokenizer.ATTR_CHANNEL_NAME;
+    private static final String ATTR_DURATION = M3UTokenizer.ATTR_DURATION;
+    private static final String ATTR_LOGO = "logo";
+    private static final String ATTR_ID = "id";
+    private static final String ATTR_GROUP_TITLE = "group-title";
+    private static final String ATTR_CHANNEL_NUMBER = "tvg-chno";
+    private static final String ATTR_LICENSE_TYPE = "inputstream.adaptive.license_type";
+    private static final String ATTR_LICENSE_KEY = "inputstream.adaptive.license_key";
+    private static final String ATTR_USER_AGENT = "http-user-agent";
+    private static final String INVALID_STREAM_URL = "http://0.0.0.0:1234";
+
+    /**
+     * The slots of the fields of the items, the registered attributes follow them.
+     */
+    private static final int SLOT_CHANNEL_NAME = 0;
+    private static final int SLOT_DURATION = 1;
+    private static final int SLOT_LOGO = 2;
+    private static final int SLOT_ID = 3;
+    private static final int SLOT_GROUP_TITLE = 4;
+    private static final int SLOT_TYPE = 5;
+    private static final int SLOT_DLNA_EXTRAS = 6;
+    private static final int SLOT_PLUGIN = 7;
+    private static final int ITEM_SLOTS = 8;
+
+    static final M3UAttributeSchema ITEM_SCHEMA = itemSchema(Collections.emptyMap());
+    private static final M3UAttributeSchema HEAD_SCHEMA = schema(ATTR_NAME, ATTR_TYPE,
+            ATTR_DLNA_EXTRAS, ATTR_PLUGIN, ATTR_TVG_URL);
+    static final M3UAttributeSchema KODIPROP_SCHEMA = schema(ATTR_LICENSE_TYPE,
+            ATTR_LICENSE_KEY);
+    static final M3UAttributeSchema EXTVLCOPT_SCHEMA = schema(ATTR_USER_AGENT);
+
+    private final M3ULineClassifier mClassifier;
+    private final Map<Integer, M3UParser.M3UTagParser> mTagParsers;
+    private final M3UParser.M3UHandler mHandler;
+    private final boolean mParseFull;
+    private final boolean mLazy;
+    private final M3UFilter mFilter;
+    private final M3UAttributeSchema mItemSchema;
+    private final M3UParseMetrics mMetrics;
+    /**
+     * The item reused for every record, null unless items are recycled.
+     */
+    private final M3UItem mRecycled;
+    /**
+     * The registered attributes of the recycled item, reused as well.
+     */
+    private final Map<String, String> mRecycledAttributes;
+    private final M3UTokenizer mTokenizer = new M3UTokenizer();
+    /**
+     * The slots the tokenizer fills, for any schema.
+     */
+    private final String[] mValues;
+    private final M3UHeaderProfiles mHeaderProfiles = new M3UHeaderProfiles();
+    private M3UItem mTempItem = null;
+    /**
+     * The lines read since the last record, null unless raw records are kept.
+     */
+    private Buffer mRaw;
+    /**
+     * True from a record rejected by the filter up to its stream URL.
+     */
+    private boolean mSkipping = false;
+    /**
+     * The offset in the reader after the last line read outside of any record.
+     */
+    private long mCheckpoint = 0;
+
+    M3UParseSession(M3ULineClassifier classifier, Map<Integer, M3UParser.M3UTagParser> tagParsers,
+                    M3UParser.M3UHandler handler, boolean parseFull, boolean lazy,
+                    boolean raw, M3UFilter filter, M3UAttributeSchema itemSchema,
+                    boolean recycle, M3UParseMetrics metrics) {
+        mClassifier = classifier;
+        mTagParsers = tagParsers;
+        mHandler = handler;
+        mParseFull = parseFull;
+        mLazy = lazy;
+        mFilter = filter;
+        mItemSchema = itemSchema;
+        mValues = new String[Math.max(itemSchema.size(), HEAD_SCHEMA.size())];
+        mMetrics = metrics;
+        mRecycled = !recycle ? null : lazy ? new M3ULazyItem() : new M3UItem();
+        mRecycledAttributes = recycle ? new HashMap<>() : null;
+        mRaw = raw ? new Buffer() : null;
+    }
+
+    /**
+     * Parse the current line of the reader.
+     *
+     * @return false if the line could not be parsed or the handler rejected it.
+     */
+    boolean parseLine(M3ULineReader reader) {
+        if (mRaw != null) {
+            if (!StandardCharsets.UTF_8.equals(reader.charset())) {
+                // M3UWriter writes UTF-8, such records are written from their fields.
+                mRaw = null;
+            } else {
+                mRaw.write(reader.bytes(), 0, reader.length()).writeByte(reader.terminator());
+            }
+        }
+        boolean success;
+        try {
+            success = parseLineInternal(reader);
+        } catch (Exception ex) {
+            mMetrics.countError(M3UParseMetrics.ERROR_LINE);
+            if (M3ULog.isLoggable(M3ULog.ERROR)) {
+                M3ULog.e(TAG, ". M3UParser parse(shs) exception: " + ex.getMessage());
+            }
+            success = false;
+        }
+        if (mTempItem == null && !mSkipping && (mRaw == null || mRaw.size() == 0)) {
+            mCheckpoint = reader.offset();
+        }
+        return success;
+    }
+
+    /**
+     * @return the offset in the reader right after the last record handed to the handler, or
+     *         skipped, where a parse can go on with a new session; -1 if the reader cannot tell.
+     */
+    long checkpoint() {
+        return mCheckpoint;
+    }
+
+    /**
+     * Commit the last record, if it was not terminated by its stream URL.
+     */
+    boolean finish() {
+        boolean r = flush(false);
+        if (!r && M3ULog.isLoggable(M3ULog.INFO)) {
+            M3ULog.i(TAG, ". M3UParser parse(shs) flush 2 false");
+        }
+        return r;
+    }
+
+    private boolean parseLineInternal(M3ULineReader reader) {
+        int begin = reader.begin();
+        int end = reader.end(begin);
+        int tag = mClassifier.classify(reader.bytes(), begin, end);
+        if (tag == M3ULineClassifier.LINE_EMPTY || tag == M3ULineClassifier.LINE_COMMENT) {
+            // Do nothing.
+            return true;
+        }
+        if (tag >= 0) {
+            mMetrics.countTag(tag);
+        }
+        if (mSkipping) {
+            if (tag != M3ULineClassifier.TAG_EXTINF && tag != M3ULineClassifier.TAG_EXTM3U) {
+                // The rest of the rejected record, up to its stream URL.
+                mSkipping = tag != M3ULineClassifier.LINE_URL;
+                clearRaw();
+                return true;
+            }
+            // The rejected record had no stream URL.
+            mSkipping = false;
+        }
+        if (tag == M3ULineClassifier.LINE_URL) { // The single line is treated as the stream URL.
+            if (mTempItem == null) {
+                // No record to complete, the line does not even need to be decoded.
+                clearRaw();
+                return true;
+            }
+            String url = reader.string(begin, end);
+            if (mFilter != null && mFilter.checksStreamURL() && !mFilter.acceptStreamURL(url)) {
+                reject();
+                mSkipping = false;
+                return true;
+            }
+            boolean f = flush(!updateURL(url));
+            if (!f && M3ULog.isLoggable(M3ULog.INFO)) {
+                M3ULog.i(TAG, ". M3UParser parse(shs) flush false");
+            }
+            return f;
+        }
+        if (tag == M3ULineClassifier.TAG_EXTM3U && !mParseFull) {
+            // No head is handed, its line must not be copied with the first item.
+            clearRaw();
+            return true;
+        }
+        CharSequence payload = reader.decode(begin + mClassifier.prefix(tag).length(), end);
+        int length = payload.length();
+        boolean tokenized = false;
+        if (tag == M3ULineClassifier.TAG_EXTINF && mFilter != null) {
+            if (!filter(payload, length)) {
+                reject();
+                return true;
+            }
+            tokenized = true;
+        }
+        if (mLazy && tag != M3ULineClassifier.TAG_EXTM3U && tag <= M3ULineClassifier.TAG_EXTHTTP
+                && (mTempItem == null || mTempItem instanceof M3ULazyItem)) {
+            // The header profile is shared, resolving it now keeps a reference instead of a copy.
+            keepLazily(tag, tag == M3ULineClassifier.TAG_EXTHTTP ? headerProfile(payload)
+                    : payload.toString());
+            return true;
+        }
+        switch (tag) {
+            case M3ULineClassifier.TAG_EXTM3U: {
+                M3UHead head = parseHead(payload, 0, length);
+                if (mRaw != null) {
+                    head.setRaw(mRaw.readByteArray());
+                }
+                boolean sem = mHandler.onSetEXTM3U(head);
+                if (!sem && M3ULog.isLoggable(M3ULog.INFO)) {
+                    M3ULog.i(TAG, ". M3UParser parse(shs) onSetEXTM3U false");
+                }
+                return sem;
+            }
+            case M3ULineClassifier.TAG_EXTINF:
+                // The old item must be committed when we meet a new item.
+                //flush();
+                if (!tokenized) {
+                    mTokenizer.tokenize(payload, 0, length, mItemSchema, mValues);
+                }
+                mTempItem = parseItem();
+                return true;
+            case M3ULineClassifier.TAG_KODIPROP:
+                mTempItem = parseKodiProp(payload, 0, length);
+                return true;
+            case M3ULineClassifier.TAG_EXTVLCOPT:
+                mTempItem = parseExtVlcOpt(payload, 0, length);
+                return true;
+            case M3ULineClassifier.TAG_EXTHTTP:
+                mTempItem = parseExtHttp(payload, 0, length);
+                return true;
+            default: {
+                String prefix = mClassifier.prefix(tag);
+                String line = prefix + payload;
+                mTempItem = mTagParsers.get(tag).onReadTag(mTempItem, line, prefix.length(),
+                        line.length());
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param invalidURL
+     *            true if the record ended with the invalid placeholder URL.
+     */
+    private boolean flush(boolean invalidURL) {
+        boolean success = true;
+        if (mTempItem != null) {
+            // The invalid item must be skipped.
+            if (mTempItem.getStreamURL() != null) {
+                if (mRaw != null) {
+                    mTempItem.setRaw(mRaw.readByteArray());
+                }
+                mMetrics.countItem();
+                success = mHandler.onReadEXTINF(mTempItem);
+            } else {
+                mMetrics.countSkipped(invalidURL);
+                clearRaw();
+            }
+            mTempItem = null;
+        }
+        return success;
+    }
+
+    private Map<String, String> headerProfile(CharSequence payload) {
+        Map<String, String> header = mHeaderProfiles.get(payload);
+        if (header == null) {
+            mMetrics.countError(M3UParseMetrics.ERROR_EXTHTTP);
+        }
+        return header;
+    }
+
+    private void keepLazily(int tag, Object payload) {
+        M3ULazyItem item;
+        if (mTempItem == null) {
+            item = mRecycled != null ? (M3ULazyItem) newItem() : new M3ULazyItem();
+            mTempItem = item;
+        } else {
+            item = (M3ULazyItem) mTempItem;
+        }
+        if (tag == M3ULineClassifier.TAG_EXTINF) {
+            item.setExtInf((String) payload, mItemSchema);
+        } else {
+            item.addProperty(tag, payload);
+        }
+    }
+
+    /**
+     * @return the item of a new record, the recycled one cleared if items are recycled.
+     */
+    private M3UItem newItem() {
+        if (mRecycled == null) {
+            return new M3UItem();
+        }
+        mRecycled.recycle();
+        return mRecycled;
+    }
+
+    /**
+     * @return false if the URL is the invalid placeholder.
+     */
+    private boolean updateURL(String url) {
+        //M3ULog.i(TAG, ". M3UParser updateURL() mTempItem: " + mTempItem);
+        if (INVALID_STREAM_URL.equals(url)) {
+            return false;
+        }
+        if (mTempItem != null) {
+            //M3ULog.i(TAG, ". M3UParser updateURL() url: " + url);
+            mTempItem.setStreamURL(url);
+        }
+        return true;
+    }
+
+    /**
+     * @param attributes
+     *            the keys of the attributes registered besides the fields, by name.
+     * @return the schema of the #EXTINF payloads.
+     */
+    static M3UAttributeSchema itemSchema(Map<String, String[]> attributes) {
+        List<String> names = new ArrayList<>(ITEM_SLOTS + attributes.size());
+        List<String[]> keys = new ArrayList<>(ITEM_SLOTS + attributes.size());
+        for (String name : new String[] {ATTR_CHANNEL_NAME, ATTR_DURATION, ATTR_LOGO, ATTR_ID,
+                ATTR_GROUP_TITLE, ATTR_TYPE, ATTR_DLNA_EXTRAS, ATTR_PLUGIN}) {
+            names.add(name);
+            keys.add(M3UAttributeSchema.aliases(name));
+        }
+        // Without an ID, the channel number identifies the channel.
+        keys.set(SLOT_ID, M3UAttributeSchema.concat(M3UAttributeSchema.aliases(ATTR_ID),
+                M3UAttributeSchema.aliases(ATTR_CHANNEL_NUMBER)));
+        for (Map.Entry<String, String[]> entry : attributes.entrySet()) {
+            names.add(entry.getKey());
+            keys.add(entry.getValue());
+        }
+        return new M3UAttributeSchema(names, keys);
+    }
+
+    /**
+     * @return the schema of the given attributes, each with its "tvg-" aliases.
+     */
+    private static M3UAttributeSchema schema(String... names) {
+        List<String[]> keys = new ArrayList<>(names.length);
+        for (String name : names) {
+            keys.add(M3UAttributeSchema.aliases(name));
+        }
+        return new M3UAttributeSchema(Arrays.asList(names), keys);
+    }
+
+    private M3UHead parseHead(CharSequence line, int offset, int end) {
+        String[] values = mValues;
+        mTokenizer.tokenize(line, offset, end, HEAD_SCHEMA, values);
+        M3UHead header = new M3UHead();
+        header.setName(values[0]);
+        header.setType(values[1]);
+        header.setDLNAExtras(values[2]);
+        header.setPlugin(values[3]);
+        header.setTVGUrl(values[4]);
+        return header;
+    }
+
+    /**
+     * Tokenize the #EXTINF payload into the slots of the item schema.
+     *
+     * @return true if the filter accepts the payload.
+     */
+    private boolean filter(CharSequence payload, int length) {
+        if (!mFilter.mayAccept(payload)) {
+            return false;
+        }
+        mTokenizer.tokenize(payload, 0, length, mItemSchema, mValues);
+        return mFilter.accept(mValues[SLOT_GROUP_TITLE], mValues[SLOT_ID],
+                mValues[SLOT_CHANNEL_NAME]);
+    }
+
+    /**
+     * Drop the lines kept for the raw record being built.
+     */
+    private void clearRaw() {
+        if (mRaw != null) {
+            mRaw.clear();
+        }
+    }
+
+    /**
+     * Drop the record being built, and skip the rest of it.
+     */
+    private void reject() {
+        mTempItem = null;
+        mSkipping = true;
+        mMetrics.countFiltered();
+        clearRaw();
+    }
+
+    /**
+     * @return the item of the tokenized #EXTINF payload.
+     */
+    private M3UItem parseItem() {
+        M3UItem item;
+        if(mTempItem == null) {
+            item = newItem();
+        } else {
+            item = mTempItem;
+        }
+        applyItem(item, mItemSchema, mValues, mRecycledAttributes);
+        return item;
+    }
+
+    /**
+     * Set the fields of an #EXTINF line, from the slots of its tokenized attributes.
+     *
+     * @param reused
+     *            the map the registered attributes are put in, null for a new one.
+     */
+    static void applyItem(M3UItem item, M3UAttributeSchema schema, String[] values,
+                          Map<String, String> reused) {
+        item.setChannelName(values[SLOT_CHANNEL_NAME]);
+        item.setDuration(convert2int(values[SLOT_DURATION]));
+        item.setLogoURL(values[SLOT_LOGO]);
+        item.setChannelID(values[SLOT_ID]);
+        item.setGroupTitle(values[SLOT_GROUP_TITLE]);
+        item.setType(values[SLOT_TYPE]);
+        item.setDLNAExtras(values[SLOT_DLNA_EXTRAS]);
+        item.setPlugin(values[SLOT_PLUGIN]);
+        Map<String, String> attributes = null;
+        if (reused != null) {
+            reused.clear();
+        }
+        for (int slot = ITEM_SLOTS; slot < schema.size(); slot++) {
+            if (values[slot] != null) {
+                if (attributes == null) {
+                    attributes = reused != null ? reused : new HashMap<>();
+                }
+                attributes.put(schema.getName(slot), values[slot]);
+            }
+        }
+        item.setAttributes(attributes);
+    }
+
+    private M3UItem parseKodiProp(CharSequence line, int offset, int end) {
+        mTokenizer.tokenize(line, offset, end, KODIPROP_SCHEMA, mValues);
+        M3UItem item;
+        if(mTempItem == null) {
+            item = newItem();
+        } else {
+            item = mTempItem;
+        }
+        applyKodiProp(item, mValues);
+        return item;
+    }
+
+    /**
+     * Set the license of a #KODIPROP line, from the slots of {@link #KODIPROP_SCHEMA}.
+     */
+    static void applyKodiProp(M3UItem item, String[] values) {
+        item.setLicenseType(values[0]);
+        item.setLicenseKeyUrl(values[1]);
+    }
+
+    private M3UItem parseExtVlcOpt(CharSequence line, int offset, int end) {
+        mTokenizer.tokenize(line, offset, end, EXTVLCOPT_SCHEMA, mValues);
+        M3UItem item;
+        if(mTempItem == null) {
+            item = newItem();
+        } else {
+            item = mTempItem;
+        }
+        applyExtVlcOpt(item, mValues);
+        return item;
+    }
+
+    /**
+     * Set the user agent of a #EXTVLCOPT line, from the slots of {@link #EXTVLCOPT_SCHEMA}.
+     */
+    static void applyExtVlcOpt(M3UItem item, String[] values) {
+        item.setUserAgent(values[0]);
+    }
+
+    private M3UItem parseExtHttp(CharSequence line, int offset, int end) {
+        M3UItem item;
+        if(mTempItem == null) {
+            item = newItem();
+        } else {
+            item = mTempItem;
+        }
+        Map<String, String> header = headerProfile(line.subSequence(offset, end));
+        if (header != null) {
+            item.setHttpHeader(header);
+        }
+        return item;
+    }
+
+    private static int convert2int(String value) {
+        int ret;
+        try {
+            ret = Integer.parseInt(value);
+        } catch (Exception e) {
+            ret = -1;
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,170 @@
+package com.swinder.android.m3uparser;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+import okhttp3.Call;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+
+/**
+ * A parse started by {@link M3UParser#parseAsync(String, M3UParser.M3UHandler, boolean,
+ * M3UParser.M3UProgressListener)}. Cancelling it cancels the HTTP call, stops the read loop at its
+ * next read and stops the calls to the handler.
+ */
+public final class M3UParseTask {
+    private final String mUrl;
+    private final M3UParser.M3UHandler mHandler;
+    private final boolean mParseFull;
+    private final M3UParser.M3UProgressListener mListener;
+    private final CompletableFuture<Boolean> mFuture = new CompletableFuture<>();
+    private volatile boolean mCancelled = false;
+    private volatile Call mCall = null;
+    private volatile long mBytesRead = 0;
+    private volatile int mItemsRead = 0;
+
+    M3UParseTask(String url, M3UParser.M3UHandler handler, boolean parseFull,
+                 M3UParser.M3UProgressListener listener) {
+        mUrl = url;
+        mHandler = new TrackingHandler(handler);
+        mParseFull = parseFull;
+        mListener = listener;
+        mFuture.whenComplete((success, ex) -> {
+            if (ex instanceof CancellationException) {
+                cancel();
+            }
+        });
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * @return the result of the parse, what {@link M3UParser#parse(String,
+     *         M3UParser.M3UHandler, boolean)} would have returned. It completes exceptionally if
+     *         the playlist could not be downloaded, cancelling it cancels the parse.
+     */
+    public CompletableFuture<Boolean> getFuture() {
+        return mFuture;
+    }
+
+    public void cancel() {
+        mCancelled = true;
+        Call call = mCall;
+        if (call != null) {
+            call.cancel();
+        }
+        mFuture.cancel(false);
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * @return the bytes of the playlist read so far.
+     */
+    public long getBytesRead() {
+        return mBytesRead;
+    }
+
+    /**
+     * @return the items handed to the handler so far.
+     */
+    public int getItemsRead() {
+        return mItemsRead;
+    }
+
+    M3UParser.M3UHandler handler() {
+        return mHandler;
+    }
+
+    boolean parseFull() {
+        return mParseFull;
+    }
+
+    void setCall(Call call) {
+        mCall = call;
+        if (mCancelled) {
+            call.cancel();
+        }
+    }
+
+    void complete(boolean success) {
+        mFuture.complete(success);
+    }
+
+    void fail(Throwable ex) {
+        mFuture.completeExceptionally(ex);
+    }
+
+    /**
+     * @return the source counting the bytes read and failing once the task is cancelled.
+     */
+    Source track(Source source, long contentLength) {
+        return new ForwardingSource(source) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                if (mCancelled) {
+                    throw new IOException("Canceled");
+                }
+                long read = super.read(sink, byteCount);
+                if (read > 0) {
+                    mBytesRead += read;
+                    if (mListener != null) {
+                        mListener.onProgress(mBytesRead, contentLength, mItemsRead);
+                    }
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Counts the items and drops the calls once the task is cancelled.
+     */
+    private final class TrackingHandler implements M3UParser.M3UHandler {
+        private final M3UParser.M3UHandler mHandler;
+
+        TrackingHandler(M3UParser.M3UHandler handler) {
+            mHandler = handler;
+        }
+
+        @Override
+        public boolean onStartEXTM3U() {
+            return !mCancelled && mHandler.onStartEXTM3U();
+        }
+
+        @Override
+        public boolean onSetEXTM3U(M3UHead header) {
+            return !mCancelled && mHandler.onSetEXTM3U(header);
+        }
+
+        @Override
+        public boolean onReadEXTM3U() {
+            return !mCancelled && mHandler.onReadEXTM3U();
+        }
+
+        @Override
+        public boolean onReadEXTINF(M3UItem item) {
+            if (mCancelled) {
+                return false;
+            }
+            mItemsRead++;
+            return mHandler.onReadEXTINF(item);
+        }
+
+        @Override
+        public boolean onNotModified() {
+            return !mCancelled && mHandler.onNotModified();
+        }
+
+        @Override
+        public void onInterrupted(M3UCheckpoint checkpoint) {
+            mHandler.onInterrupted(checkpoint);
+        }
+    }
+}
@@ -0,0 +1,947 @@
+package com.swinder.android.m3uparser;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+public class M3UParser {
+    public static String TAG = "M3UParser";
+    public interface M3UHandler {
+        /**
+         * When M3UParser starts reading a playlist, this method will be called.
+         */
+        default boolean onStartEXTM3U() {
+            return true;
+        }
+
+        /**
+         * When M3UParser get a M3UHead, this method will be called.
+         *
+         * @param header
+         *            the instance of M3UHead.
+         */
+        boolean onSetEXTM3U(M3UHead header);
+        /**
+         * When M3UParser want to parse M3UHead(epg), this method will be called.
+         *
+         */
+        boolean onReadEXTM3U();
+
+        /**
+         * When M3UParser get a M3UItem, this method will be called.
+         *
+         * @param item
+         *            the instance of M3UItem. With {@link #setRecycleItems(boolean)} on, it is
+         *            reused for the next record and only valid during this call.
+         */
+        boolean onReadEXTINF(M3UItem item);
+
+        /**
+         * When the playlist did not change since it was cached and
+         * {@link #setSkipUnchanged(boolean)} is on, this method will be called instead of
+         * parsing it again, the items delivered by the previous parse are still up to date.
+         */
+        default boolean onNotModified() {
+            return true;
+        }
+
+        /**
+         * When the download of the playlist was interrupted and could not be resumed, this method
+         * will be called before the parse fails. The items before the checkpoint were handed to
+         * the handler, the other ones are parsed by
+         * {@link M3UParser#parse(M3UCheckpoint, M3UHandler, boolean)}.
+         *
+         * @param checkpoint
+         *            where to resume the parse.
+         */
+        default void onInterrupted(M3UCheckpoint checkpoint) {
+        }
+    }
+
+    public interface M3UProgressListener {
+        /**
+         * While an async parse reads the playlist, this method will be called from the parsing
+         * thread after every read.
+         *
+         * @param bytes
+         *            the bytes of the playlist read so far.
+         * @param contentLength
+         *            the size of the playlist, -1 if unknown.
+         * @param items
+         *            the items handed to the handler so far.
+         */
+        void onProgress(long bytes, long contentLength, int items);
+    }
+
+    public interface M3UParseListener {
+        /**
+         * When a parse is over, successful or not, this method will be called from the parsing
+         * thread.
+         *
+         * @param metrics
+         *            the numbers of the parse.
+         */
+        void onParseFinished(M3UParseMetrics metrics);
+    }
+
+    public interface M3UTagParser {
+        /**
+         * When M3UParser meets a line starting with a registered tag, this method will be called.
+         *
+         * @param item
+         *            the item being built from the current record, null before the first #EXTINF.
+         * @param line
+         *            the whole line.
+         * @param offset
+         *            the index of the first char after the tag prefix.
+         * @param end
+         *            the end (exclusive) of the line with trailing white spaces ignored.
+         * @return the item to keep building the record with, usually the given one.
+         */
+        M3UItem onReadTag(M3UItem item, String line, int offset, int end);
+    }
+
+    private static final CacheControl REVALIDATE = new CacheControl.Builder()
+            .maxAge(0, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * The client used by parsers which were not given one, created on first use.
+     */
+    private static final class DefaultClient {
+        static final OkHttpClient INSTANCE = new OkHttpClient();
+    }
+
+    private final M3ULineClassifier mClassifier = new M3ULineClassifier();
+    private final Map<Integer, M3UTagParser> mTagParsers = new HashMap<>();
+    private final Map<String, String[]> mAttributes = new LinkedHashMap<>();
+    private M3UAttributeSchema mItemSchema = M3UParseSession.ITEM_SCHEMA;
+    private Charset mCharset = null;
+    private OkHttpClient mClient;
+    private boolean mSkipUnchanged = false;
+    private boolean mLazyItems = false;
+    private boolean mKeepRawRecords = false;
+    private boolean mRecycleItems = false;
+    private M3UFilter mFilter = null;
+    private ForkJoinPool mPool = null;
+    private File mSnapshotFile = null;
+    private Executor mExecutor = null;
+    private M3UParseListener mParseListener = null;
+    private int mMaxConcurrentParses = 4;
+    private int mMaxResumes = 3;
+    private int mRunningParses = 0;
+    private final ArrayDeque<M3UParseTask> mQueuedParses = new ArrayDeque<>();
+
+    public M3UParser() {
+        this(null);
+    }
+
+    /**
+     * @param client
+     *            the client used to download playlists, sharing one keeps its connection pool,
+     *            TLS sessions and threads across parses. Null for a client shared by the parsers
+     *            of this library.
+     */
+    public M3UParser(OkHttpClient client) {
+        mClient = client != null ? client : DefaultClient.INSTANCE;
+    }
+
+    /**
+     * Keep downloaded playlists in a disk cache. Every parse then revalidates the cached copy
+     * with its ETag / Last-Modified and the server only sends the playlist again if it changed.
+     *
+     * @param cache
+     *            the cache, one instance must be shared by everything using its directory.
+     *            Null to download without a cache.
+     */
+    public void setCache(Cache cache) {
+        mClient = mClient.newBuilder().cache(cache).build();
+    }
+
+    /**
+     * When the server answers a revalidation with 304 Not Modified, skip parsing the cached
+     * playlist and call {@link M3UHandler#onNotModified()} instead. Off by default, the cached
+     * playlist is then parsed as if it was downloaded.
+     */
+    public void setSkipUnchanged(boolean skip) {
+        mSkipUnchanged = skip;
+    }
+
+    /**
+     * Keep the raw tag lines of each item and parse its attributes only when they are first read.
+     * Off by default. Worth it for huge playlists of which only a few items are shown in full or
+     * played: the items keep one string per tag line instead of one per attribute.
+     */
+    public void setLazyItems(boolean lazy) {
+        mLazyItems = lazy;
+    }
+
+    /**
+     * Keep the lines of each record as read, so {@link M3UWriter} copies the items which were not
+     * changed instead of writing them from their fields. Off by default, it costs the size of the
+     * playlist in memory for the items kept.
+     */
+    public void setKeepRawRecords(boolean keep) {
+        mKeepRawRecords = keep;
+    }
+
+    /**
+     * Hand the same item to {@link M3UHandler#onReadEXTINF(M3UItem)} for every record, cleared
+     * before each one, instead of a new item per record. Off by default. Worth it for handlers
+     * which only read items as they come, e.g. to count, index or copy them: a parse then
+     * allocates the strings of the fields only. The item must not be kept after the call, so
+     * {@link M3UIndex}, {@link M3UDiffHandler} and {@link M3UAggregator} cannot be used with it;
+     * {@link M3UPlaylist} copies the items and can. {@link M3UReader} and
+     * {@link M3UParallelParser} always hand new items.
+     */
+    public void setRecycleItems(boolean recycle) {
+        mRecycleItems = recycle;
+    }
+
+    /**
+     * Set how many times a download interrupted by a network error is resumed where it stopped,
+     * 3 by default, 0 to only hand the checkpoint to {@link M3UHandler#onInterrupted(
+     * M3UCheckpoint)}. A download is only resumed if the server gives an ETag or a Last-Modified
+     * date and sends the same version again: a range from the checkpoint on, or the whole
+     * playlist, of which the bytes already read are then skipped. The items already handed to the
+     * handler are not handed again.
+     */
+    public void setMaxResumes(int max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("max < 0: " + max);
+        }
+        mMaxResumes = max;
+    }
+
+    /**
+     * Only deliver the records matching the filter, the other ones are skipped without being
+     * parsed.
+     *
+     * @param filter
+     *            the filter, null to deliver every record.
+     */
+    public void setFilter(M3UFilter filter) {
+        mFilter = filter;
+    }
+
+    /**
+     * Set the charset of playlists without a byte order mark, UTF-8 is used by default.
+     *
+     * @param charset
+     *            the charset, null for UTF-8.
+     */
+    public void setCharset(Charset charset) {
+        mCharset = charset;
+    }
+
+    /**
+     * Register a parser for an additional tag, e.g. "#EXTGRP:". Lines starting with the tag are
+     * handed to the parser instead of being skipped as comments.
+     *
+     * @param prefix
+     *            the tag including the leading '#' and the trailing ':' if any.
+     * @param parser
+     *            the parser of the tag payload.
+     */
+    public void registerTag(String prefix, M3UTagParser parser) {
+        if (parser == null) {
+            throw new IllegalArgumentException("No parser for tag: " + prefix);
+        }
+        int id = mClassifier.register(prefix);
+        if (id <= M3ULineClassifier.TAG_EXTHTTP) {
+            throw new IllegalArgumentException("Built-in tag cannot be replaced: " + prefix);
+        }
+        mTagParsers.put(id, parser);
+    }
+
+    /**
+     * Keep an attribute of the #EXTINF lines the items have no field for, e.g. "catchup" or
+     * "tvg-rec", read with {@link M3UItem#getAttribute(String)}. Other attributes are skipped.
+     *
+     * @param name
+     *            the name of the attribute in the items.
+     * @param keys
+     *            the keys it is read from, the first one found in this order wins, e.g.
+     *            "catchup-days", "tvg-catchup-days". The name itself if none is given.
+     */
+    public void registerAttribute(String name, String... keys) {
+        if (name == null) {
+            throw new IllegalArgumentException("No attribute name");
+        }
+        mAttributes.put(name, keys.length > 0 ? keys.clone() : new String[] {name});
+        mItemSchema = M3UParseSession.itemSchema(mAttributes);
+    }
+
+    /**
+     * Keep a binary snapshot of the last playlist parsed from a URL. When the server reports the
+     * same ETag, or Last-Modified and length, as the snapshot, it is replayed instead of parsing
+     * the playlist. Open it with {@link M3USnapshot#open(File)} to show the playlist before any
+     * request is made.
+     *
+     * @param file
+     *            the snapshot file, null to disable snapshots.
+     */
+    public void setSnapshotFile(File file) {
+        mSnapshotFile = file;
+    }
+
+    /**
+     * Set the pool used by {@link #parseParallel(File, M3UHandler, boolean, boolean)}, the common
+     * fork-join pool is used by default.
+     */
+    public void setForkJoinPool(ForkJoinPool pool) {
+        mPool = pool;
+    }
+
+    /**
+     * Set the executor the async parses read and parse playlists on, the executor of the
+     * OkHttp dispatcher is used by default.
+     */
+    public void setExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Set how many async parses of this parser may run at once, 4 by default. The others wait
+     * in a queue, in the order they were started.
+     */
+    public void setMaxConcurrentParses(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("max < 1: " + max);
+        }
+        synchronized (mQueuedParses) {
+            mMaxConcurrentParses = max;
+        }
+        startQueuedParses();
+    }
+
+    /**
+     * Get the metrics of every parse. The timings are only measured while a listener is set.
+     *
+     * @param listener
+     *            the listener, null to stop measuring.
+     */
+    public void setParseListener(M3UParseListener listener) {
+        mParseListener = listener;
+    }
+
+    M3UParseSession newSession(M3UHandler handler, boolean parseFull) {
+        return newSession(handler, parseFull, new M3UParseMetrics(null));
+    }
+
+    M3UParseSession newSession(M3UHandler handler, boolean parseFull, M3UParseMetrics metrics) {
+        // Readers and parallel parses keep items past the handler call.
+        return newSession(handler, parseFull, false, metrics);
+    }
+
+    M3UParseSession newSession(M3UHandler handler, boolean parseFull, boolean recycle,
+                               M3UParseMetrics metrics) {
+        return new M3UParseSession(mClassifier, mTagParsers, handler, parseFull, mLazyItems,
+                mKeepRawRecords, mFilter, mItemSchema, recycle, metrics);
+    }
+
+    /**
+     * @return the source measuring its reads if metrics are listened to, the source itself
+     *         otherwise.
+     */
+    private BufferedSource instrument(BufferedSource source, final M3UParseMetrics metrics) {
+        if (mParseListener == null) {
+            return source;
+        }
+        return Okio.buffer(new ForwardingSource(source) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long start = System.nanoTime();
+                long read = super.read(sink, byteCount);
+                metrics.onRead(read, System.nanoTime() - start);
+                return read;
+            }
+        });
+    }
+
+    private void report(M3UParseMetrics metrics) {
+        M3UParseListener listener = mParseListener;
+        if (listener != null) {
+            metrics.finish();
+            listener.onParseFinished(metrics);
+        }
+    }
+
+    /**
+     * Use a specific handler to parse a m3u file.
+     *
+     * @param url
+     *            a file to be parsed.
+     * @param handler
+     *            a specific handler which will not change the default handler.
+     */
+    public boolean parse(String url, M3UHandler handler, boolean parseFull) {
+        M3ULog.i(TAG, "> M3UParser parse(uhs) handler: " + handler);
+        if (handler == null) { // No need do anything, if no handler.
+            M3ULog.i(TAG, "< M3UParser parse(uhs) false");
+            return false;
+        }
+        M3ULog.i(TAG, ". M3UParser parse(uhs) full: " + parseFull);
+        boolean success = true;
+        M3UParseMetrics metrics = new M3UParseMetrics(url);
+        try {
+            M3ULog.i(TAG, ". M3UParser parse(uhs) url: " + url);
+            try (Response response = mClient.newCall(newRequest(url)).execute()) {
+                success = parse(url, response, handler, parseFull, null, metrics);
+            }
+        } catch (FileNotFoundException ex) {
+            success = false;
+            metrics.countError(M3UParseMetrics.ERROR_IO);
+            M3ULog.e(TAG, ". M3UParser parse(uhs) file not found exception: " + ex.getMessage());
+        } catch (IOException ex) {
+            success = false;
+            metrics.countError(M3UParseMetrics.ERROR_IO);
+            M3ULog.e(TAG, ". M3UParser parse(uhs) io exception: " + ex.getMessage());
+        }
+        report(metrics);
+        M3ULog.i(TAG, "< M3UParser parse(uhs) success: " + success);
+        return success;
+    }
+
+    /**
+     * Resume a parse interrupted at a checkpoint, see {@link M3UHandler#onInterrupted(
+     * M3UCheckpoint)}. The handler gets the items after the checkpoint then
+     * {@link M3UHandler#onReadEXTM3U()}, as if the interrupted parse had gone on. It fails if the
+     * playlist changed since.
+     *
+     * @param checkpoint
+     *            where to resume the parse.
+     * @param handler
+     *            a specific handler which will not change the default handler.
+     */
+    public boolean parse(M3UCheckpoint checkpoint, M3UHandler handler, boolean parseFull) {
+        M3ULog.i(TAG, "> M3UParser parse(chs) checkpoint: " + checkpoint);
+        if (handler == null) { // No need do anything, if no handler.
+            M3ULog.i(TAG, "< M3UParser parse(chs) false");
+            return false;
+        }
+        boolean success = false;
+        M3UParseMetrics metrics = new M3UParseMetrics(checkpoint.getUrl());
+        try {
+            success = parse(null, checkpoint, handler, parseFull, null, metrics);
+        } catch (IOException ex) {
+            metrics.countError(M3UParseMetrics.ERROR_IO);
+            M3ULog.e(TAG, ". M3UParser parse(chs) io exception: " + ex.getMessage());
+        }
+        report(metrics);
+        M3ULog.i(TAG, "< M3UParser parse(chs) success: " + success);
+        return success;
+    }
+
+    /**
+     * Parse a playlist in the background. The download is enqueued on the OkHttp dispatcher,
+     * the playlist is then read and parsed on the executor set by {@link #setExecutor(Executor)},
+     * at most {@link #setMaxConcurrentParses(int)} at a time. The handler is called from the
+     * parsing thread.
+     *
+     * @param url
+     *            a file to be parsed.
+     * @param handler
+     *            a specific handler which will not change the default handler.
+     * @param listener
+     *            the listener of the progress of the parse, null if not needed.
+     * @return the handle to wait for or cancel the parse.
+     */
+    public M3UParseTask parseAsync(String url, M3UHandler handler, boolean parseFull,
+                                   M3UProgressListener listener) {
+        if (handler == null) {
+            throw new IllegalArgumentException("No handler");
+        }
+        M3UParseTask task = new M3UParseTask(url, handler, parseFull, listener);
+        task.getFuture().whenComplete((success, ex) -> {
+            if (task.isCancelled()) {
+                // A queued task must not wait for its turn to be dropped.
+                synchronized (mQueuedParses) {
+                    mQueuedParses.remove(task);
+                }
+            }
+        });
+        synchronized (mQueuedParses) {
+            mQueuedParses.add(task);
+        }
+        startQueuedParses();
+        return task;
+    }
+
+    private void startQueuedParses() {
+        while (true) {
+            M3UParseTask task;
+            synchronized (mQueuedParses) {
+                if (mRunningParses >= mMaxConcurrentParses || mQueuedParses.isEmpty()) {
+                    return;
+                }
+                task = mQueuedParses.poll();
+                mRunningParses++;
+            }
+            start(task);
+        }
+    }
+
+    private void finished(M3UParseTask task) {
+        synchronized (mQueuedParses) {
+            mRunningParses--;
+        }
+        startQueuedParses();
+    }
+
+    private void start(final M3UParseTask task) {
+        if (task.isCancelled()) {
+            finished(task);
+            return;
+        }
+        M3ULog.i(TAG, ". M3UParser parseAsync() url: " + task.getUrl());
+        final M3UParseMetrics metrics = new M3UParseMetrics(task.getUrl());
+        Call call;
+        try {
+            call = mClient.newCall(newRequest(task.getUrl()));
+        } catch (IllegalArgumentException ex) {
+            task.fail(ex);
+            finished(task);
+            return;
+        }
+        task.setCall(call);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException ex) {
+                M3ULog.e(TAG, ". M3UParser parseAsync() io exception: " + ex.getMessage());
+                metrics.countError(M3UParseMetrics.ERROR_IO);
+                report(metrics);
+                task.fail(ex);
+                finished(task);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                Executor executor = mExecutor != null ? mExecutor
+                        : mClient.dispatcher().executorService();
+                try {
+                    executor.execute(() -> {
+                        try (Response r = response) {
+                            task.complete(parse(task.getUrl(), r, task.handler(),
+                                    task.parseFull(), task, metrics));
+                        } catch (IOException | RuntimeException ex) {
+                            M3ULog.e(TAG, ". M3UParser parseAsync() exception: " + ex.getMessage());
+                            if (ex instanceof IOException) {
+                                metrics.countError(M3UParseMetrics.ERROR_IO);
+                            }
+                            task.fail(ex);
+                        } finally {
+                            report(metrics);
+                            finished(task);
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    response.close();
+                    task.fail(ex);
+                    finished(task);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return a call to download a file of the playlist, e.g. its EPG, with the client and cache
+     *         of the parser.
+     */
+    Call newCall(String url) {
+        return mClient.newCall(newRequest(url));
+    }
+
+    OkHttpClient client() {
+        return mClient;
+    }
+
+    private Request newRequest(String url) {
+        Request.Builder builder = new Request.Builder()
+                .url(url);
+        if (mClient.cache() != null) {
+            // Always ask the server, a cached copy is only used once it was revalidated.
+            builder.cacheControl(REVALIDATE);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Parse the answer to the request of a playlist.
+     *
+     * @param task
+     *            the async parse to track, null for a blocking parse.
+     */
+    private boolean parse(String url, Response response, M3UHandler handler, boolean parseFull,
+                          M3UParseTask task, M3UParseMetrics metrics) throws IOException {
+        M3ULog.i(TAG, ". M3UParser parse(uhs) response.code: " + response.code());
+        if (response.code() != 200) {
+            metrics.countError(M3UParseMetrics.ERROR_HTTP);
+            M3ULog.e(TAG, ". M3UParser parse(uhs) false, http request failed for " + url + " with error: " + response.message());
+            return false;
+        }
+        Response network = response.networkResponse();
+        if (mSkipUnchanged && network != null
+                && network.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            M3ULog.i(TAG, ". M3UParser parse(uhs) not modified");
+            return handler.onNotModified();
+        }
+        BufferedSource source = open(response, response.body().contentLength(), task, metrics);
+        M3UCheckpoint checkpoint = M3UCheckpoint.start(url, response);
+        if (mSnapshotFile != null) {
+            return parseWithSnapshot(response, source, checkpoint, handler, parseFull, task,
+                    metrics);
+        }
+        boolean success = handler.onStartEXTM3U();
+        success &= parse(source, checkpoint, handler, parseFull, task, metrics);
+        return success;
+    }
+
+    /**
+     * @param contentLength
+     *            the size of the whole playlist, -1 if unknown.
+     */
+    private BufferedSource open(Response response, long contentLength, M3UParseTask task,
+                                M3UParseMetrics metrics) {
+        BufferedSource source = response.body().source();
+        if (task != null) {
+            source = Okio.buffer(task.track(source, contentLength));
+        }
+        return instrument(source, metrics);
+    }
+
+    private boolean parseWithSnapshot(Response response, BufferedSource source,
+                                      M3UCheckpoint checkpoint, M3UHandler handler,
+                                      boolean parseFull, M3UParseTask task,
+                                      M3UParseMetrics metrics)
+            throws IOException {
+        String validator = validatorOf(response);
+        M3USnapshot snapshot = M3USnapshot.open(mSnapshotFile);
+        if (validator != null && snapshot != null && validator.equals(snapshot.getValidator())) {
+            M3ULog.i(TAG, ". M3UParser parse(uhs) replay snapshot: " + validator);
+            return snapshot.replay(handler, parseFull);
+        }
+        M3USnapshot.Recorder recorder = new M3USnapshot.Recorder(handler);
+        boolean success = recorder.onStartEXTM3U();
+        success &= parse(source, checkpoint, recorder, parseFull, task, metrics);
+        if (success && validator != null) {
+            M3USnapshot.write(recorder.getPlaylist(), validator, mSnapshotFile);
+        } else if (!mSnapshotFile.delete() && mSnapshotFile.exists()) {
+            M3ULog.e(TAG, ". M3UParser parse(uhs) cannot delete stale snapshot " + mSnapshotFile);
+        }
+        return success;
+    }
+
+    /**
+     * @return what identifies this version of the playlist, null if the server gives nothing.
+     */
+    private static String validatorOf(Response response) {
+        String etag = response.header("ETag");
+        if (etag != null) {
+            return "etag:" + etag;
+        }
+        String lastModified = response.header("Last-Modified");
+        long length = response.body().contentLength();
+        if (lastModified == null || length == -1) {
+            return null;
+        }
+        return "modified:" + lastModified + ";length:" + length;
+    }
+
+    /**
+     * Open a playlist to read its items one by one. Only the start of the playlist is downloaded
+     * if only its first items are read. The cached copy is always parsed, snapshots are not used.
+     *
+     * @param url
+     *            a file to be parsed.
+     * @return the reader, it must be closed.
+     * @throws IOException
+     *             if the playlist cannot be downloaded.
+     */
+    public M3UReader read(String url, boolean parseFull) throws IOException {
+        M3ULog.i(TAG, ". M3UParser read() url: " + url);
+        Response response = mClient.newCall(newRequest(url)).execute();
+        try {
+            if (response.code() != 200) {
+                throw new IOException("http request failed for " + url + " with error: "
+                        + response.code() + " " + response.message());
+            }
+            return new M3UReader(this, response.body().source(), response, parseFull, mCharset);
+        } catch (IOException | RuntimeException ex) {
+            response.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Open a local playlist to read its items one by one.
+     *
+     * @return the reader, it must be closed.
+     */
+    public M3UReader read(File file, boolean parseFull) throws IOException {
+        return read(Okio.buffer(Okio.source(file)), parseFull);
+    }
+
+    /**
+     * Read the items of a playlist already opened by the caller one by one.
+     *
+     * @param source
+     *            the playlist, it is closed with the reader.
+     * @return the reader, it must be closed.
+     */
+    public M3UReader read(BufferedSource source, boolean parseFull) throws IOException {
+        try {
+            return new M3UReader(this, source, source, parseFull, mCharset);
+        } catch (IOException | RuntimeException ex) {
+            source.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Use a specific handler to parse a local m3u file.
+     *
+     * @param file
+     *            a file to be parsed.
+     * @param handler
+     *            a specific handler which will not change the default handler.
+     */
+    public boolean parse(File file, M3UHandler handler, boolean parseFull) throws IOException {
+        M3UParseMetrics metrics = new M3UParseMetrics(file.getPath());
+        try (BufferedSource source = Okio.buffer(Okio.source(file))) {
+            return parse(instrument(source, metrics), handler, parseFull, metrics);
+        } catch (IOException ex) {
+            metrics.countError(M3UParseMetrics.ERROR_IO);
+            throw ex;
+        } finally {
+            report(metrics);
+        }
+    }
+
+    /**
+     * Use a specific handler to parse a local m3u file on several threads. The file is split
+     * into chunks of whole records which are parsed on the fork-join pool, the handler is still
+     * only called from the calling thread.
+     *
+     * @param file
+     *            a file to be parsed.
+     * @param handler
+     *            a specific handler which will not change the default handler.
+     * @param ordered
+     *            true to get the items in file order, false to get each chunk as soon as it is
+     *            parsed.
+     */
+    public boolean parseParallel(File file, M3UHandler handler, boolean parseFull, boolean ordered)
+            throws IOException {
+        if (handler == null) { // No need do anything, if no handler.
+            return false;
+        }
+        ForkJoinPool pool = mPool != null ? mPool : ForkJoinPool.commonPool();
+        M3UParseMetrics metrics = new M3UParseMetrics(file.getPath());
+        Boolean success;
+        try {
+            success = new M3UParallelParser(this, pool).parse(file, handler, parseFull, ordered,
+                    mCharset, metrics);
+        } catch (IOException ex) {
+            metrics.countError(M3UParseMetrics.ERROR_IO);
+            report(metrics);
+            throw ex;
+        }
+        if (success == null) {
+            // Wide charsets cannot be split on bytes.
+            return parse(file, handler, parseFull);
+        }
+        report(metrics);
+        return success;
+    }
+
+    /**
+     * Use a specific handler to parse a m3u playlist already opened by the caller. The playlist
+     * is decoded as UTF-8 unless it starts with a byte order mark or another charset was set by
+     * {@link #setCharset(Charset)}.
+     *
+     * @param source
+     *            the playlist, it is read up to its end but not closed.
+     * @param handler
+     *            a specific handler which will not change the default handler.
+     */
+    public boolean parse(BufferedSource source, M3UHandler handler, boolean parseFull)
+            throws IOException {
+        M3UParseMetrics metrics = new M3UParseMetrics(null);
+        try {
+            return parse(instrument(source, metrics), handler, parseFull, metrics);
+        } catch (IOException ex) {
+            metrics.countError(M3UParseMetrics.ERROR_IO);
+            throw ex;
+        } finally {
+            report(metrics);
+        }
+    }
+
+    private boolean parse(BufferedSource source, M3UHandler handler, boolean parseFull,
+                          M3UParseMetrics metrics) throws IOException {
+        if (handler == null) { // No need do anything, if no handler.
+            return false;
+        }
+        boolean success = handler.onStartEXTM3U();
+        success &= parse(source, null, handler, parseFull, null, metrics);
+        return success;
+    }
+
+    /**
+     * Parse a playlist up to its end. If the download is interrupted, it is resumed from the last
+     * checkpoint with a new session so the items already handed to the handler are skipped.
+     *
+     * @param source
+     *            the playlist from the checkpoint on, null to download it.
+     * @param checkpoint
+     *            where the source starts, null if the playlist cannot be resumed.
+     * @param task
+     *            the async parse to track, null for a blocking parse.
+     */
+    private boolean parse(BufferedSource source, M3UCheckpoint checkpoint, M3UHandler handler,
+                          boolean parseFull, M3UParseTask task, M3UParseMetrics metrics)
+            throws IOException {
+        boolean success = true;
+        int resumes = 0;
+        Response resumed = null;
+        try {
+            while (true) {
+                M3ULineReader reader = null;
+                M3UParseSession session = null;
+                try {
+                    if (source == null) {
+                        resumed = resume(checkpoint, task, metrics);
+                        if (resumed == null) {
+                            return false;
+                        }
+                        long length = resumed.body().contentLength();
+                        source = open(resumed, length != -1 ? checkpoint.getOffset() + length : -1,
+                                task, metrics);
+                    }
+                    Charset charset = checkpoint != null && checkpoint.getCharset() != null
+                            ? checkpoint.getCharset() : mCharset;
+                    reader = new M3ULineReader(source, charset,
+                            checkpoint == null || checkpoint.getOffset() == 0);
+                    session = newSession(handler, parseFull, mRecycleItems, metrics);
+                    while (reader.next()) {
+                        success &= session.parseLine(reader);
+                    }
+                    success &= session.finish();
+                    break;
+                } catch (IOException ex) {
+                    if (checkpoint != null && session != null) {
+                        long offset = session.checkpoint();
+                        checkpoint = offset != -1 ? checkpoint.advance(offset, reader.charset())
+                                : null;
+                    }
+                    if (checkpoint == null || task != null && task.isCancelled()) {
+                        throw ex;
+                    }
+                    if (resumes++ == mMaxResumes) {
+                        handler.onInterrupted(checkpoint);
+                        throw ex;
+                    }
+                    M3ULog.e(TAG, ". M3UParser parse(shs) resume at " + checkpoint.getOffset()
+                            + " after io exception: " + ex.getMessage());
+                    source = null;
+                    if (resumed != null) {
+                        resumed.close();
+                        resumed = null;
+                    }
+                }
+            }
+        } finally {
+            if (resumed != null) {
+                resumed.close();
+            }
+        }
+        boolean r = handler.onReadEXTM3U();
+        if (!r) {
+            M3ULog.i(TAG, ". M3UParser parse(shs) onReadEXTM3U false");
+        }
+        success &= r;
+        return success;
+    }
+
+    /**
+     * Download the playlist from the checkpoint on.
+     *
+     * @return the answer, null if the playlist cannot be resumed.
+     */
+    private Response resume(M3UCheckpoint checkpoint, M3UParseTask task,
+                            M3UParseMetrics metrics) throws IOException {
+        long offset = checkpoint.getOffset();
+        Request.Builder builder = new Request.Builder()
+                .url(checkpoint.getUrl())
+                .header("Range", "bytes=" + offset + "-")
+                // A cached playlist would be sent whole.
+                .cacheControl(CacheControl.FORCE_NETWORK);
+        String ifRange = checkpoint.ifRange();
+        if (ifRange != null) {
+            builder.header("If-Range", ifRange);
+        }
+        Call call = mClient.newCall(builder.build());
+        if (task != null) {
+            task.setCall(call);
+        }
+        Response response = call.execute();
+        try {
+            if (response.code() == HttpURLConnection.HTTP_PARTIAL && checkpoint.matches(response)
+                    && offset == rangeStart(response.header("Content-Range"))) {
+                return response;
+            }
+            if (response.code() == HttpURLConnection.HTTP_OK && checkpoint.matches(response)) {
+                // The server does not support ranges, the playlist did not change though.
+                response.body().source().skip(offset);
+                return response;
+            }
+        } catch (IOException | RuntimeException ex) {
+            response.close();
+            throw ex;
+        }
+        response.close();
+        metrics.countError(M3UParseMetrics.ERROR_HTTP);
+        M3ULog.e(TAG, ". M3UParser parse(shs) cannot resume " + checkpoint.getUrl() + " at "
+                + offset + ", code: " + response.code());
+        return null;
+    }
+
+    /**
+     * @return the first byte of a Content-Range header, -1 if it has none.
+     */
+    private static long rangeStart(String contentRange) {
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+        int dash = contentRange.indexOf('-');
+        try {
+            return dash != -1 ? Long.parseLong(contentRange.substring(6, dash).trim()) : -1;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.swinder.android.m3uparser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact in-memory playlist. Items are stored in columns instead of one M3UItem each: the
+ * fields shared by many items (group, type, user agent, logo location, license...) are interned
+ * into a table and referenced by index, identical header maps are stored once, and durations are
+ * kept in a primitive array.
+ * <p>
+ * Use it as the handler of {@link M3UParser} to fill it, each parse replaces its content. Items
+ * are read back through {@link #get(int)} as lightweight read-only views.
+ */
+public class M3UPlaylist implements M3UParser.M3UHandler, Iterable<M3UItem> {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private M3UHead mHead = null;
+    private int mSize = 0;
+    private final M3UInternTable<String> mStrings = new M3UInternTable<>();
+    private final M3UInternTable<Map<String, String>> mHeaders = new M3UInternTable<>();
+
+    private String[] mChannelNames = new String[INITIAL_CAPACITY];
+    private String[] mChannelIds = new String[INITIAL_CAPACITY];
+    private String[] mStreamURLs = new String[INITIAL_CAPACITY];
+    /**
+     * The logo URL after its last '/', the part up to it is interned in mLogoLocations.
+     */
+    private String[] mLogoNames = new String[INITIAL_CAPACITY];
+    private int[] mLogoLocations = new int[INITIAL_CAPACITY];
+    private int[] mDurations = new int[INITIAL_CAPACITY];
+    private int[] mGroupTitles = new int[INITIAL_CAPACITY];
+    private int[] mTypes = new int[INITIAL_CAPACITY];
+    private int[] mDLNAExtras = new int[INITIAL_CAPACITY];
+    private int[] mPlugins = new int[INITIAL_CAPACITY];
+    private int[] mLicenseTypes = new int[INITIAL_CAPACITY];
+    private int[] mLicenseKeys = new int[INITIAL_CAPACITY];
+    private int[] mUserAgents = new int[INITIAL_CAPACITY];
+    private int[] mHttpHeaders = new int[INITIAL_CAPACITY];
+    private int[] mAttributes = new int[INITIAL_CAPACITY];
+    /**
+     * The raw records kept by the parser, for {@link M3UWriter}.
+     */
+    private byte[][] mRawRecords = new byte[INITIAL_CAPACITY][];
+
+    public M3UHead getHead() {
+        return mHead;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return a read-only view of the item at the given index, it holds no field of its own.
+     */
+    public M3UItem get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+        return new View(index);
+    }
+
+    /**
+     * Append a copy of the item to the playlist.
+     */
+    public void add(M3UItem item) {
+        ensureCapacity(mSize + 1);
+        int i = mSize++;
+        mChannelNames[i] = item.getChannelName();
+        mChannelIds[i] = item.getChannelID();
+        mStreamURLs[i] = item.getStreamURL();
+        String logo = item.getLogoURL();
+        int slash = logo == null ? -1 : logo.lastIndexOf('/');
+        mLogoLocations[i] = slash == -1 ? M3UInternTable.NULL
+                : mStrings.intern(logo.substring(0, slash + 1));
+        mLogoNames[i] = slash == -1 ? logo : logo.substring(slash + 1);
+        mDurations[i] = item.getDuration();
+        mGroupTitles[i] = mStrings.intern(item.getGroupTitle());
+        mTypes[i] = mStrings.intern(item.getType());
+        mDLNAExtras[i] = mStrings.intern(item.getDLNAExtras());
+        mPlugins[i] = mStrings.intern(item.getPlugin());
+        mLicenseTypes[i] = mStrings.intern(item.getLicenseType());
+        mLicenseKeys[i] = mStrings.intern(item.getLicenseKey());
+        mUserAgents[i] = mStrings.intern(item.getUserAgent());
+        mHttpHeaders[i] = internMap(item.getHttpHeader());
+        // Interned with the headers, both are small maps of strings.
+        mAttributes[i] = internMap(item.getAttributes());
+        mRawRecords[i] = item.getRaw();
+    }
+
+    /**
+     * Intern a header or attribute map. It is only copied the first time it is seen: the map of
+     * the item may be reused or modified afterwards.
+     */
+    private int internMap(Map<String, String> map) {
+        if (map == null) {
+            return M3UInternTable.NULL;
+        }
+        int index = mHeaders.indexOf(map);
+        return index != M3UInternTable.NULL ? index
+                : mHeaders.intern(Collections.unmodifiableMap(new HashMap<>(map)));
+    }
+
+    public void clear() {
+        mHead = null;
+        Arrays.fill(mChannelNames, 0, mSize, null);
+        Arrays.fill(mChannelIds, 0, mSize, null);
+        Arrays.fill(mStreamURLs, 0, mSize, null);
+        Arrays.fill(mLogoNames, 0, mSize, null);
+        Arrays.fill(mRawRecords, 0, mSize, null);
+        mSize = 0;
+        mStrings.clear();
+        mHeaders.clear();
+    }
+
+    /**
+     * Release the spare capacity of the columns.
+     */
+    public void trimToSize() {
+        resize(mSize);
+    }
+
+    @Override
+    public Iterator<M3UItem> iterator() {
+        return new Iterator<M3UItem>() {
+            private int mNext = 0;
+
+            @Override
+            public boolean hasNext() {
+                return mNext < mSize;
+            }
+
+            @Override
+            public M3UItem next() {
+                if (mNext >= mSize) {
+                    throw new NoSuchElementException();
+                }
+                return new View(mNext++);
+            }
+        };
+    }
+
+    @Override
+    public boolean onStartEXTM3U() {
+        clear();
+        return true;
+    }
+
+    @Override
+    public boolean onSetEXTM3U(M3UHead header) {
+        mHead = header;
+        return true;
+    }
+
+    @Override
+    public boolean onReadEXTM3U() {
+        trimToSize();
+        return true;
+    }
+
+    @Override
+    public boolean onReadEXTINF(M3UItem item) {
+        add(item);
+        return true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mDurations.length) {
+            resize(Math.max(capacity, mDurations.length + (mDurations.length >> 1)));
+        }
+    }
+
+    private void resize(int capacity) {
+        if (capacity == mDurations.length) {
+            return;
+        }
+        mChannelNames = Arrays.copyOf(mChannelNames, capacity);
+        mChannelIds = Arrays.copyOf(mChannelIds, capacity);
+        mStreamURLs = Arrays.copyOf(mStreamURLs, capacity);
+        mLogoNames = Arrays.copyOf(mLogoNames, capacity);
+        mLogoLocations = Arrays.copyOf(mLogoLocations, capacity);
+        mDurations = Arrays.copyOf(mDurations, capacity);
+        mGroupTitles = Arrays.copyOf(mGroupTitles, capacity);
+        mTypes = Arrays.copyOf(mTypes, capacity);
+        mDLNAExtras = Arrays.copyOf(mDLNAExtras, capacity);
+        mPlugins = Arrays.copyOf(mPlugins, capacity);
+        mLicenseTypes = Arrays.copyOf(mLicenseTypes, capacity);
+        mLicenseKeys = Arrays.copyOf(mLicenseKeys, capacity);
+        mUserAgents = Arrays.copyOf(mUserAgents, capacity);
+        mHttpHeaders = Arrays.copyOf(mHttpHeaders, capacity);
+        mAttributes = Arrays.copyOf(mAttributes, capacity);
+        mRawRecords = Arrays.copyOf(mRawRecords, capacity);
+    }
+
+    /**
+     * A flyweight item reading its fields from the columns of the playlist.
+     */
+    private final class View extends M3UItemView {
+        private final int mIndex;
+
+        View(int index) {
+            mIndex = index;
+        }
+
+        @Override
+        public String getChannelName() {
+            return mChannelNames[mIndex];
+        }
+
+        @Override
+        public String getChannelID() {
+            return mChannelIds[mIndex];
+        }
+
+        @Override
+        public int getDuration() {
+            return mDurations[mIndex];
+        }
+
+        @Override
+        public String getStreamURL() {
+            return mStreamURLs[mIndex];
+        }
+
+        @Override
+        public String getLogoURL() {
+            String location = mStrings.get(mLogoLocations[mIndex]);
+            return location == null ? mLogoNames[mIndex] : location + mLogoNames[mIndex];
+        }
+
+        @Override
+        public String getGroupTitle() {
+            return mStrings.get(mGroupTitles[mIndex]);
+        }
+
+        @Override
+        public String getType() {
+            return mStrings.get(mTypes[mIndex]);
+        }
+
+        @Override
+        public String getDLNAExtras() {
+            return mStrings.get(mDLNAExtras[mIndex]);
+        }
+
+        @Override
+        public String getPlugin() {
+            return mStrings.get(mPlugins[mIndex]);
+        }
+
+        @Override
+        public String getLicenseType() {
+            return mStrings.get(mLicenseTypes[mIndex]);
+        }
+
+        @Override
+        public String getLicenseKey() {
+            return mStrings.get(mLicenseKeys[mIndex]);
+        }
+
+        @Override
+        public String getUserAgent() {
+            return mStrings.get(mUserAgents[mIndex]);
+        }
+
+        @Override
+        public Map<String, String> getHttpHeader() {
+            return mHeaders.get(mHttpHeaders[mIndex]);
+        }
+
+        @Override
+        public Map<String, String> getAttributes() {
+            return mHeaders.get(mAttributes[mIndex]);
+        }
+
+        @Override
+        byte[] getRaw() {
+            return mRawRecords[mIndex];
+        }
+    }
+}
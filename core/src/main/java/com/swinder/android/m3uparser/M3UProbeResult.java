@@ -0,0 +1,80 @@
+package com.swinder.android.m3uparser;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The result of probing the stream URL of an item with {@link M3UStreamProber}.
+ */
+public final class M3UProbeResult {
+    private final String mStreamURL;
+    private final boolean mProbed;
+    private final int mCode;
+    private final long mTimeToFirstByteNanos;
+    private final String mError;
+    /**
+     * The System.nanoTime() of the probe, for the TTL of the cache.
+     */
+    private final long mProbedAt = System.nanoTime();
+
+    M3UProbeResult(String streamURL, boolean probed, int code, long timeToFirstByteNanos,
+                   String error) {
+        mStreamURL = streamURL;
+        mProbed = probed;
+        mCode = code;
+        mTimeToFirstByteNanos = timeToFirstByteNanos;
+        mError = error;
+    }
+
+    public String getStreamURL() {
+        return mStreamURL;
+    }
+
+    /**
+     * @return true if the server answered with a success code.
+     */
+    public boolean isReachable() {
+        return mCode >= 200 && mCode < 300;
+    }
+
+    /**
+     * @return false if the stream could not be probed, e.g. an rtmp:// or udp:// URL, so nothing
+     *         is known about it.
+     */
+    public boolean isProbed() {
+        return mProbed;
+    }
+
+    /**
+     * @return the HTTP code of the answer, -1 if there was none.
+     */
+    public int getCode() {
+        return mCode;
+    }
+
+    /**
+     * @return the nanoseconds until the headers of the answer were received, -1 if there was no
+     *         answer.
+     */
+    public long getTimeToFirstByteNanos() {
+        return mTimeToFirstByteNanos;
+    }
+
+    /**
+     * @return why there was no answer, null if there was one.
+     */
+    public String getError() {
+        return mError;
+    }
+
+    long getProbedAt() {
+        return mProbedAt;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "[M3UProbeResult@" + Integer.toHexString(hashCode()) + "]: Stream URL: " + mStreamURL
+                + ", Probed: " + mProbed + ", Code: " + mCode + ", TTFB: "
+                + mTimeToFirstByteNanos / 1000000 + "ms, Error: " + mError;
+    }
+}
@@ -0,0 +1,75 @@
+package com.swinder.android.m3uparser;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A programme of the EPG, read from {@link M3UEpg}.
+ */
+public final class M3UProgramme {
+    private final String mChannelID;
+    /**
+     * The start time in milliseconds since the epoch.
+     */
+    private final long mStart;
+    /**
+     * The stop time in milliseconds since the epoch.
+     */
+    private final long mStop;
+    private final String mTitle;
+    private final String mSubTitle;
+    private final String mCategory;
+    private final String mDescription;
+
+    M3UProgramme(String channelID, long start, long stop, String title, String subTitle,
+                 String category, String description) {
+        mChannelID = channelID;
+        mStart = start;
+        mStop = stop;
+        mTitle = title;
+        mSubTitle = subTitle;
+        mCategory = category;
+        mDescription = description;
+    }
+
+    /**
+     * @return the ID of the channel, as the tvg-id of its items.
+     */
+    public String getChannelID() {
+        return mChannelID;
+    }
+
+    public long getStart() {
+        return mStart;
+    }
+
+    public long getStop() {
+        return mStop;
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public String getSubTitle() {
+        return mSubTitle;
+    }
+
+    public String getCategory() {
+        return mCategory;
+    }
+
+    /**
+     * @return the description, null unless descriptions are kept by the loader.
+     */
+    public String getDescription() {
+        return mDescription;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "[M3UProgramme@" + Integer.toHexString(hashCode()) + "]: Channel ID: " + mChannelID
+                + ", Start: " + mStart + ", Stop: " + mStop + ", Title: " + mTitle
+                + ", Sub-title: " + mSubTitle + ", Category: " + mCategory;
+    }
+}
@@ -0,0 +1,133 @@
+package com.swinder.android.m3uparser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import okio.BufferedSource;
+
+/**
+ * Reads the items of a playlist one by one, the playlist is only read as far as items are pulled.
+ * Close it as soon as no more items are needed: the download stops and the connection is
+ * released. It is closed by itself once the last item was read.
+ * <p>
+ * <pre>
+ * try (M3UReader reader = parser.read(url, false)) {
+ *     List&lt;M3UItem&gt; preview = reader.stream().limit(50).collect(Collectors.toList());
+ * }
+ * </pre>
+ * Read errors are thrown as {@link UncheckedIOException}.
+ */
+public final class M3UReader implements Iterator<M3UItem>, AutoCloseable {
+    private static final String TAG = M3UParser.TAG;
+
+    private final Closeable mResource;
+    private final M3ULineReader mLineReader;
+    private final M3UParseSession mSession;
+    private final ArrayDeque<M3UItem> mPending = new ArrayDeque<>();
+    private M3UHead mHead = null;
+    private boolean mFinished = false;
+    private boolean mClosed = false;
+
+    /**
+     * @param resource
+     *            what to close with the reader, e.g. the HTTP response of the playlist.
+     */
+    M3UReader(M3UParser parser, BufferedSource source, Closeable resource, boolean parseFull,
+              Charset charset) throws IOException {
+        mResource = resource;
+        mLineReader = new M3ULineReader(source, charset);
+        mSession = parser.newSession(new M3UParser.M3UHandler() {
+            @Override
+            public boolean onSetEXTM3U(M3UHead header) {
+                mHead = header;
+                return true;
+            }
+
+            @Override
+            public boolean onReadEXTM3U() {
+                return true;
+            }
+
+            @Override
+            public boolean onReadEXTINF(M3UItem item) {
+                mPending.add(item);
+                return true;
+            }
+        }, parseFull);
+    }
+
+    /**
+     * @return the head of the playlist if it was read, parseFull must be set. It is read with
+     *         the first item at the latest.
+     */
+    public M3UHead getHead() {
+        return mHead;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!mPending.isEmpty()) {
+            return true;
+        }
+        try {
+            while (mPending.isEmpty() && !mFinished && !mClosed) {
+                if (mLineReader.next()) {
+                    mSession.parseLine(mLineReader);
+                } else {
+                    mSession.finish();
+                    mFinished = true;
+                }
+            }
+        } catch (IOException ex) {
+            close();
+            throw new UncheckedIOException(ex);
+        }
+        if (mPending.isEmpty()) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public M3UItem next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return mPending.poll();
+    }
+
+    /**
+     * @return the remaining items as an ordered, sequential stream closing the reader when
+     *         closed.
+     */
+    public Stream<M3UItem> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+    }
+
+    /**
+     * Stop reading the playlist and release it, the items already read can still be used.
+     */
+    @Override
+    public void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        try {
+            mResource.close();
+        } catch (IOException ex) {
+            M3ULog.e(TAG, ". M3UParser close() io exception: " + ex.getMessage());
+        }
+    }
+}
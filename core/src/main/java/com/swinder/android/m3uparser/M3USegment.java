@@ -0,0 +1,65 @@
+package com.swinder.android.m3uparser;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A media segment of a live HLS media playlist, delivered by {@link M3UMediaPlaylistReloader}.
+ */
+public final class M3USegment {
+    private final long mMediaSequence;
+    private final double mDuration;
+    private final String mTitle;
+    private final String mURI;
+    private final boolean mDiscontinuity;
+
+    M3USegment(long mediaSequence, double duration, String title, String uri,
+               boolean discontinuity) {
+        mMediaSequence = mediaSequence;
+        mDuration = duration;
+        mTitle = title;
+        mURI = uri;
+        mDiscontinuity = discontinuity;
+    }
+
+    /**
+     * @return the media sequence number of the segment, which identifies it across reloads.
+     */
+    public long getMediaSequence() {
+        return mMediaSequence;
+    }
+
+    /**
+     * @return the duration of the segment in seconds, from its #EXTINF line.
+     */
+    public double getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * @return the title of the #EXTINF line, null if it has none.
+     */
+    public String getTitle() {
+        return mTitle;
+    }
+
+    /**
+     * @return the URI of the segment, resolved against the URL of the playlist.
+     */
+    public String getURI() {
+        return mURI;
+    }
+
+    /**
+     * @return true if the segment follows an #EXT-X-DISCONTINUITY tag.
+     */
+    public boolean isDiscontinuity() {
+        return mDiscontinuity;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "[M3USegment@" + Integer.toHexString(hashCode()) + "]: Sequence: " + mMediaSequence
+                + ", Duration: " + mDuration + ", URI: " + mURI;
+    }
+}
@@ -0,0 +1,465 @@
+package com.swinder.android.m3uparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * A parsed playlist saved in a compact binary file which is memory mapped when loaded, so a
+ * playlist can be shown at start up without parsing its text again. Items are only decoded
+ * when they are accessed.
+ * <p>
+ * Layout, big endian:
+ * <pre>
+ * header:  magic, version, crc32 of the body, body length (long)
+ * body:    string count, string offsets[count + 1], UTF-8 string data (padded to 4 bytes)
+ *          validator string, head flag, head strings[5]
+ *          header and attribute map count, map offsets[count + 1], key / value string pairs
+ *          item count, items[count][ITEM_FIELDS]
+ * </pre>
+ * Every string is stored once and referenced by its index, -1 stands for null. Items are fixed
+ * size records, so the item index is the offset index.
+ */
+public final class M3USnapshot implements Iterable<M3UItem> {
+    private static final int MAGIC = 0x4d335553; // "M3US"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 20;
+    private static final int HEAD_FIELDS = 5;
+    private static final int ITEM_FIELDS = 14;
+    private static final int NULL = M3UInternTable.NULL;
+
+    private final ByteBuffer mBuffer;
+    private final int mStringCount;
+    private final int mStringOffsets;
+    private final int mStringData;
+    private final String[] mStrings;
+    private final String mValidator;
+    private final M3UHead mHead;
+    private final int mMapCount;
+    private final int mMapOffsets;
+    private final int mMapPairs;
+    private final Map<Integer, Map<String, String>> mMaps = new HashMap<>();
+    private final int mSize;
+    private final int mItems;
+
+    private M3USnapshot(ByteBuffer buffer) {
+        mBuffer = buffer;
+        int position = HEADER_SIZE;
+        mStringCount = buffer.getInt(position);
+        mStringOffsets = position + 4;
+        mStringData = mStringOffsets + (mStringCount + 1) * 4;
+        mStrings = new String[mStringCount];
+        position = align(mStringData + buffer.getInt(mStringOffsets + mStringCount * 4));
+        mValidator = string(buffer.getInt(position));
+        position += 4;
+        if (buffer.getInt(position) != 0) {
+            mHead = new M3UHead();
+            mHead.setName(string(buffer.getInt(position + 4)));
+            mHead.setType(string(buffer.getInt(position + 8)));
+            mHead.setDLNAExtras(string(buffer.getInt(position + 12)));
+            mHead.setPlugin(string(buffer.getInt(position + 16)));
+            mHead.setTVGUrl(string(buffer.getInt(position + 20)));
+        } else {
+            mHead = null;
+        }
+        position += 4 + HEAD_FIELDS * 4;
+        mMapCount = buffer.getInt(position);
+        mMapOffsets = position + 4;
+        mMapPairs = mMapOffsets + (mMapCount + 1) * 4;
+        position = mMapPairs + buffer.getInt(mMapOffsets + mMapCount * 4) * 4;
+        mSize = buffer.getInt(position);
+        mItems = position + 4;
+    }
+
+    /**
+     * Map a snapshot written by {@link #write(M3UPlaylist, String, File)}.
+     *
+     * @return null if the file is missing, corrupted or of another version.
+     */
+    public static M3USnapshot open(File file) throws IOException {
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || buffer.getLong(12) != buffer.capacity() - HEADER_SIZE) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            ByteBuffer body = buffer.duplicate();
+            body.position(HEADER_SIZE);
+            crc.update(body);
+            if ((int) crc.getValue() != buffer.getInt(8)) {
+                return null;
+            }
+            return new M3USnapshot(buffer);
+        }
+    }
+
+    /**
+     * Save a playlist. The file is written next to its destination and renamed, so a snapshot
+     * being read is never seen half written.
+     *
+     * @param validator
+     *            identifies the source the playlist was parsed from, e.g. its ETag or length,
+     *            see {@link #getValidator()}.
+     */
+    public static void write(M3UPlaylist playlist, String validator, File file) throws IOException {
+        M3UInternTable<String> strings = new M3UInternTable<>();
+        M3UInternTable<Map<String, String>> maps = new M3UInternTable<>();
+        int size = playlist.size();
+        int[] items = new int[size * ITEM_FIELDS];
+        for (int i = 0; i < size; i++) {
+            M3UItem item = playlist.get(i);
+            int field = i * ITEM_FIELDS;
+            items[field++] = strings.intern(item.getChannelName());
+            items[field++] = strings.intern(item.getChannelID());
+            items[field++] = item.getDuration();
+            items[field++] = strings.intern(item.getStreamURL());
+            items[field++] = strings.intern(item.getLogoURL());
+            items[field++] = strings.intern(item.getGroupTitle());
+            items[field++] = strings.intern(item.getType());
+            items[field++] = strings.intern(item.getDLNAExtras());
+            items[field++] = strings.intern(item.getPlugin());
+            items[field++] = strings.intern(item.getLicenseType());
+            items[field++] = strings.intern(item.getLicenseKey());
+            items[field++] = strings.intern(item.getUserAgent());
+            items[field++] = maps.intern(item.getHttpHeader());
+            items[field] = maps.intern(item.getAttributes());
+        }
+        int validatorId = strings.intern(validator);
+        M3UHead head = playlist.getHead();
+        int[] headIds = new int[HEAD_FIELDS];
+        if (head != null) {
+            headIds[0] = strings.intern(head.getName());
+            headIds[1] = strings.intern(head.getType());
+            headIds[2] = strings.intern(head.getDLNAExtras());
+            headIds[3] = strings.intern(head.getPlugin());
+            headIds[4] = strings.intern(head.getTVGUrl());
+        }
+        int[][] pairs = new int[maps.size()][];
+        for (int m = 0; m < maps.size(); m++) {
+            Map<String, String> map = maps.get(m);
+            pairs[m] = new int[map.size() * 2];
+            int p = 0;
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                pairs[m][p++] = strings.intern(entry.getKey());
+                pairs[m][p++] = strings.intern(entry.getValue());
+            }
+        }
+
+        Buffer body = new Buffer();
+        Buffer data = new Buffer();
+        body.writeInt(strings.size());
+        body.writeInt(0);
+        for (int s = 0; s < strings.size(); s++) {
+            data.writeUtf8(strings.get(s));
+            body.writeInt((int) data.size());
+        }
+        body.writeAll(data);
+        while (body.size() % 4 != 0) {
+            body.writeByte(0);
+        }
+        body.writeInt(validatorId);
+        body.writeInt(head != null ? 1 : 0);
+        for (int id : headIds) {
+            body.writeInt(head != null ? id : NULL);
+        }
+        body.writeInt(pairs.length);
+        int offset = 0;
+        body.writeInt(offset);
+        for (int[] map : pairs) {
+            offset += map.length;
+            body.writeInt(offset);
+        }
+        for (int[] map : pairs) {
+            for (int id : map) {
+                body.writeInt(id);
+            }
+        }
+        body.writeInt(size);
+        for (int value : items) {
+            body.writeInt(value);
+        }
+
+        CRC32 crc = new CRC32();
+        body.copyTo(new CheckedOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }, crc), 0, body.size());
+        File tmp = new File(file.getPath() + ".tmp");
+        try (BufferedSink sink = Okio.buffer(Okio.sink(tmp))) {
+            sink.writeInt(MAGIC);
+            sink.writeInt(VERSION);
+            sink.writeInt((int) crc.getValue());
+            sink.writeLong(body.size());
+            sink.writeAll(body);
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot replace snapshot " + file);
+        }
+    }
+
+    /**
+     * @return what identified the source of the playlist when it was written. A snapshot must
+     *         be thrown away when the validator of the source is not the same anymore.
+     */
+    public String getValidator() {
+        return mValidator;
+    }
+
+    public M3UHead getHead() {
+        return mHead;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return a read-only item, its fields are decoded on first access.
+     */
+    public M3UItem get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+        return new View(mItems + index * ITEM_FIELDS * 4);
+    }
+
+    @Override
+    public Iterator<M3UItem> iterator() {
+        return new Iterator<M3UItem>() {
+            private int mNext = 0;
+
+            @Override
+            public boolean hasNext() {
+                return mNext < mSize;
+            }
+
+            @Override
+            public M3UItem next() {
+                if (mNext >= mSize) {
+                    throw new NoSuchElementException();
+                }
+                return get(mNext++);
+            }
+        };
+    }
+
+    /**
+     * Hand the snapshot to a handler as if the playlist was parsed.
+     */
+    public boolean replay(M3UParser.M3UHandler handler, boolean parseFull) {
+        boolean success = handler.onStartEXTM3U();
+        if (parseFull && mHead != null) {
+            success &= handler.onSetEXTM3U(mHead);
+        }
+        for (int i = 0; i < mSize; i++) {
+            success &= handler.onReadEXTINF(get(i));
+        }
+        return success & handler.onReadEXTM3U();
+    }
+
+    /**
+     * Passes everything to a handler while recording it into a playlist, to write a snapshot
+     * of what was parsed.
+     */
+    static final class Recorder implements M3UParser.M3UHandler {
+        private final M3UParser.M3UHandler mHandler;
+        private final M3UPlaylist mPlaylist = new M3UPlaylist();
+
+        Recorder(M3UParser.M3UHandler handler) {
+            mHandler = handler;
+        }
+
+        M3UPlaylist getPlaylist() {
+            return mPlaylist;
+        }
+
+        @Override
+        public boolean onStartEXTM3U() {
+            mPlaylist.onStartEXTM3U();
+            return mHandler.onStartEXTM3U();
+        }
+
+        @Override
+        public boolean onSetEXTM3U(M3UHead header) {
+            mPlaylist.onSetEXTM3U(header);
+            return mHandler.onSetEXTM3U(header);
+        }
+
+        @Override
+        public boolean onReadEXTM3U() {
+            mPlaylist.onReadEXTM3U();
+            return mHandler.onReadEXTM3U();
+        }
+
+        @Override
+        public boolean onReadEXTINF(M3UItem item) {
+            mPlaylist.onReadEXTINF(item);
+            return mHandler.onReadEXTINF(item);
+        }
+
+        @Override
+        public boolean onNotModified() {
+            return mHandler.onNotModified();
+        }
+
+        @Override
+        public void onInterrupted(M3UCheckpoint checkpoint) {
+            mHandler.onInterrupted(checkpoint);
+        }
+    }
+
+    private static int align(int position) {
+        return (position + 3) & ~3;
+    }
+
+    private synchronized String string(int id) {
+        if (id == NULL) {
+            return null;
+        }
+        String value = mStrings[id];
+        if (value == null) {
+            int start = mBuffer.getInt(mStringOffsets + id * 4);
+            int end = mBuffer.getInt(mStringOffsets + (id + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer data = mBuffer.duplicate();
+            data.position(mStringData + start);
+            data.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            mStrings[id] = value;
+        }
+        return value;
+    }
+
+    private synchronized Map<String, String> map(int id) {
+        if (id == NULL) {
+            return null;
+        }
+        Map<String, String> map = mMaps.get(id);
+        if (map == null) {
+            int start = mBuffer.getInt(mMapOffsets + id * 4);
+            int end = mBuffer.getInt(mMapOffsets + (id + 1) * 4);
+            map = new HashMap<>();
+            for (int p = start; p < end; p += 2) {
+                map.put(string(mBuffer.getInt(mMapPairs + p * 4)),
+                        string(mBuffer.getInt(mMapPairs + (p + 1) * 4)));
+            }
+            map = Collections.unmodifiableMap(map);
+            mMaps.put(id, map);
+        }
+        return map;
+    }
+
+    /**
+     * An item reading its fields from the mapped record at the given position.
+     */
+    private final class View extends M3UItemView {
+        private final int mRecord;
+
+        View(int record) {
+            mRecord = record;
+        }
+
+        private int field(int index) {
+            return mBuffer.getInt(mRecord + index * 4);
+        }
+
+        @Override
+        public String getChannelName() {
+            return string(field(0));
+        }
+
+        @Override
+        public String getChannelID() {
+            return string(field(1));
+        }
+
+        @Override
+        public int getDuration() {
+            return field(2);
+        }
+
+        @Override
+        public String getStreamURL() {
+            return string(field(3));
+        }
+
+        @Override
+        public String getLogoURL() {
+            return string(field(4));
+        }
+
+        @Override
+        public String getGroupTitle() {
+            return string(field(5));
+        }
+
+        @Override
+        public String getType() {
+            return string(field(6));
+        }
+
+        @Override
+        public String getDLNAExtras() {
+            return string(field(7));
+        }
+
+        @Override
+        public String getPlugin() {
+            return string(field(8));
+        }
+
+        @Override
+        public String getLicenseType() {
+            return string(field(9));
+        }
+
+        @Override
+        public String getLicenseKey() {
+            return string(field(10));
+        }
+
+        @Override
+        public String getUserAgent() {
+            return string(field(11));
+        }
+
+        @Override
+        public Map<String, String> getHttpHeader() {
+            return map(field(12));
+        }
+
+        @Override
+        public Map<String, String> getAttributes() {
+            return map(field(13));
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.swinder.android.m3uparser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Probes the stream URLs of parsed items, to find the dead ones and rank the mirrors of a channel
+ * by how fast they answer. A stream is probed with a HEAD request, or with a GET of its first byte
+ * if the server refuses or drops HEAD, sent with the headers and user agent of its item; only the
+ * headers of the answer are waited for. Probes run in parallel, a few at a time per host.
+ * <p>
+ * Results are cached by stream URL for a while, whatever the headers of the items, and items
+ * sharing a URL being probed wait for that probe.
+ * <pre>
+ * List&lt;M3UItem&gt; mirrors = prober.rank(index.getAllByChannelID(id)).get();
+ * </pre>
+ */
+public class M3UStreamProber {
+    private static final String TAG = M3UParser.TAG;
+
+    /**
+     * The number of streams cached from which a probe first evicts the expired results.
+     */
+    static final int EVICT_THRESHOLD = 64;
+
+    /**
+     * Reachable streams first, fastest first, then the ones which could not be probed, then the
+     * unreachable ones.
+     */
+    public static final Comparator<M3UProbeResult> BY_REACHABILITY = (a, b) -> {
+        int rank = Integer.compare(rank(a), rank(b));
+        if (rank != 0 || !a.isReachable()) {
+            return rank;
+        }
+        return Long.compare(a.getTimeToFirstByteNanos(), b.getTimeToFirstByteNanos());
+    };
+
+    /**
+     * Records when a probe actually starts, it may first wait for the probes of its host.
+     */
+    private static final Interceptor START_TIME = chain -> {
+        long[] start = chain.request().tag(long[].class);
+        if (start != null) {
+            start[0] = System.nanoTime();
+        }
+        return chain.proceed(chain.request());
+    };
+
+    private final M3UParser mParser;
+    private long mTimeoutMillis = 5000;
+    private int mMaxProbes = 16;
+    private int mMaxProbesPerHost = 2;
+    private long mTtlMillis = TimeUnit.MINUTES.toMillis(10);
+    private OkHttpClient mClient = null;
+    private final Map<String, CompletableFuture<M3UProbeResult>> mCache = new HashMap<>();
+    /**
+     * The number of streams cached at which the expired results are evicted next.
+     */
+    private int mEvictAt = EVICT_THRESHOLD;
+
+    /**
+     * @param parser
+     *            the parser whose HTTP client and connections are used.
+     */
+    public M3UStreamProber(M3UParser parser) {
+        mParser = parser;
+    }
+
+    /**
+     * @param millis
+     *            how long a probe may take at most, 5 seconds by default.
+     */
+    public synchronized void setTimeout(long millis) {
+        mTimeoutMillis = millis;
+        mClient = null;
+    }
+
+    /**
+     * Set how many probes run at once, 16 by default, and at once on a host, 2 by default.
+     */
+    public synchronized void setMaxProbes(int max, int maxPerHost) {
+        if (max < 1 || maxPerHost < 1) {
+            throw new IllegalArgumentException("max < 1: " + Math.min(max, maxPerHost));
+        }
+        mMaxProbes = max;
+        mMaxProbesPerHost = maxPerHost;
+        mClient = null;
+    }
+
+    /**
+     * @param millis
+     *            how long a result is reused, 10 minutes by default, 0 to always probe.
+     */
+    public synchronized void setCacheTtl(long millis) {
+        mTtlMillis = millis;
+    }
+
+    public synchronized void clearCache() {
+        mCache.clear();
+    }
+
+    /**
+     * @return the number of streams cached or being probed.
+     */
+    synchronized int cacheSize() {
+        return mCache.size();
+    }
+
+    /**
+     * @return completes with the result of the stream of the item.
+     */
+    public CompletableFuture<M3UProbeResult> probe(M3UItem item) {
+        String url = item.getStreamURL();
+        CompletableFuture<M3UProbeResult> future;
+        synchronized (this) {
+            future = mCache.get(url);
+            if (future != null && (!future.isDone() || !isExpired(future.join()))) {
+                return future;
+            }
+            if (mCache.size() >= mEvictAt) {
+                evictExpired();
+            }
+            future = new CompletableFuture<>();
+            mCache.put(url, future);
+        }
+        start(item, url, future);
+        return future;
+    }
+
+    /**
+     * @return completes with the results of the streams of the items, in the order of the items.
+     */
+    public CompletableFuture<List<M3UProbeResult>> probe(List<M3UItem> items) {
+        evictExpired();
+        List<CompletableFuture<M3UProbeResult>> futures = new ArrayList<>(items.size());
+        for (M3UItem item : items) {
+            futures.add(probe(item));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> {
+                    List<M3UProbeResult> results = new ArrayList<>(futures.size());
+                    for (CompletableFuture<M3UProbeResult> future : futures) {
+                        results.add(future.join());
+                    }
+                    return results;
+                });
+    }
+
+    /**
+     * @return completes with the items sorted by {@link #BY_REACHABILITY}, e.g. the mirrors of a
+     *         channel in the order they should be tried.
+     */
+    public CompletableFuture<List<M3UItem>> rank(List<M3UItem> items) {
+        return probe(items).thenApply(results -> {
+            List<Integer> order = new ArrayList<>(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                order.add(i);
+            }
+            // Stable, items as good as each other keep the order of the playlist.
+            order.sort((a, b) -> BY_REACHABILITY.compare(results.get(a), results.get(b)));
+            List<M3UItem> ranked = new ArrayList<>(items.size());
+            for (int i : order) {
+                ranked.add(items.get(i));
+            }
+            return ranked;
+        });
+    }
+
+    /**
+     * Cancel the probes running, their results are not cached.
+     */
+    public void cancel() {
+        OkHttpClient client;
+        synchronized (this) {
+            client = mClient;
+            mCache.values().removeIf(future -> !future.isDone());
+        }
+        if (client != null) {
+            client.dispatcher().cancelAll();
+        }
+    }
+
+    private void start(M3UItem item, String url, CompletableFuture<M3UProbeResult> future) {
+        Map<String, String> header = item.getHttpHeader();
+        String userAgent = item.getUserAgent();
+        Request head;
+        try {
+            Request.Builder builder = new Request.Builder().url(url).head();
+            if (header != null) {
+                for (Map.Entry<String, String> entry : header.entrySet()) {
+                    builder.header(entry.getKey(), entry.getValue());
+                }
+            }
+            if (userAgent != null) {
+                builder.header("User-Agent", userAgent);
+            }
+            head = builder.build();
+        } catch (IllegalArgumentException ex) {
+            // Not an HTTP URL, or headers OkHttp refuses.
+            complete(url, future, new M3UProbeResult(url, false, -1, -1, ex.getMessage()));
+            return;
+        }
+        enqueue(head, url, future);
+    }
+
+    private void enqueue(Request request, String url, CompletableFuture<M3UProbeResult> future) {
+        final long[] start = {System.nanoTime()};
+        request = request.newBuilder().tag(long[].class, start).build();
+        client().newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException ex) {
+                if (isHead(call) && !call.isCanceled()) {
+                    // Some stream servers drop HEAD requests instead of refusing them.
+                    enqueue(rangedGet(call.request()), url, future);
+                    return;
+                }
+                complete(url, future, new M3UProbeResult(url, true, -1, -1, ex.getMessage()));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                long timeToFirstByte = System.nanoTime() - start[0];
+                int code = response.code();
+                // Never read the body, it may be an endless live stream.
+                response.close();
+                if (isHead(call) && (code < 200 || code >= 300)) {
+                    // Many stream servers do not support HEAD.
+                    enqueue(rangedGet(call.request()), url, future);
+                    return;
+                }
+                complete(url, future, new M3UProbeResult(url, true, code, timeToFirstByte, null));
+            }
+        });
+    }
+
+    private static boolean isHead(Call call) {
+        return "HEAD".equals(call.request().method());
+    }
+
+    /**
+     * @return a GET of the first byte only, with the headers of the HEAD request.
+     */
+    private static Request rangedGet(Request head) {
+        return head.newBuilder().get().header("Range", "bytes=0-0").build();
+    }
+
+    private void complete(String url, CompletableFuture<M3UProbeResult> future,
+                          M3UProbeResult result) {
+        if (!result.isReachable()) {
+            M3ULog.i(TAG, ". M3UParser probe() url: " + url + ", code: " + result.getCode()
+                    + ", error: " + result.getError());
+        }
+        future.complete(result);
+    }
+
+    private synchronized OkHttpClient client() {
+        if (mClient == null) {
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(mMaxProbes);
+            dispatcher.setMaxRequestsPerHost(mMaxProbesPerHost);
+            mClient = mParser.client().newBuilder()
+                    .dispatcher(dispatcher)
+                    .addInterceptor(START_TIME)
+                    .cache(null)
+                    .connectTimeout(mTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .readTimeout(mTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .callTimeout(mTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .build();
+        }
+        return mClient;
+    }
+
+    private boolean isExpired(M3UProbeResult result) {
+        long ttl = TimeUnit.MILLISECONDS.toNanos(mTtlMillis);
+        return System.nanoTime() - result.getProbedAt() >= ttl;
+    }
+
+    private synchronized void evictExpired() {
+        Iterator<CompletableFuture<M3UProbeResult>> it = mCache.values().iterator();
+        while (it.hasNext()) {
+            CompletableFuture<M3UProbeResult> future = it.next();
+            if (future.isDone() && isExpired(future.join())) {
+                it.remove();
+            }
+        }
+        // Scanned again once the map doubled, so probing item by item stays linear.
+        mEvictAt = Math.max(EVICT_THRESHOLD, mCache.size() * 2);
+    }
+
+    private static int rank(M3UProbeResult result) {
+        return result.isReachable() ? 0 : !result.isProbed() ? 1 : 2;
+    }
+}
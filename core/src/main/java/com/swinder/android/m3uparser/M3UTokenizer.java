@@ -0,0 +1,192 @@
+package com.swinder.android.m3uparser;
+
+import java.util.Arrays;
+
+/**
+ * Single pass attribute tokenizer for #EXTM3U, #EXTINF, #KODIPROP and #EXTVLCOPT payloads.
+ * It reads the same keys and values as the former state machine of M3UParser but never walks
+ * back over the input, so the cost is linear in the length of the line. Only the values of the
+ * keys of a {@link M3UAttributeSchema} are copied, straight into their slots.
+ */
+final class M3UTokenizer {
+    static final String ATTR_DURATION = "duration";
+    static final String ATTR_CHANNEL_NAME = "channel_name";
+
+    /**
+     * Reused for every key and value, a tokenizer is therefore not thread safe.
+     */
+    private final StringBuilder mBuffer = new StringBuilder(64);
+    /**
+     * The rank of the key each slot was filled from.
+     */
+    private int[] mRanks = new int[16];
+    private M3UAttributeSchema mSchema;
+    private String[] mValues;
+
+    /**
+     * Tokenize the region [begin, end) of a line, surrounding white spaces are ignored the same
+     * way as String#trim() does.
+     *
+     * @param line
+     *            the line holding the attributes.
+     * @param begin
+     *            the first char of the payload.
+     * @param end
+     *            the end (exclusive) of the payload.
+     * @param schema
+     *            the attributes to extract.
+     * @param values
+     *            receives the value of each slot of the schema, null for the missing ones.
+     */
+    void tokenize(CharSequence line, int begin, int end, M3UAttributeSchema schema,
+                  String[] values) {
+        Arrays.fill(values, 0, schema.size(), null);
+        if (mRanks.length < schema.size()) {
+            mRanks = new int[schema.size()];
+        }
+        mSchema = schema;
+        mValues = values;
+        while (begin < end && line.charAt(begin) <= ' ') {
+            begin++;
+        }
+        while (end > begin && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (begin == end) {
+            return;
+        }
+        StringBuilder connector = mBuffer;
+        connector.setLength(0);
+        int i = begin;
+        char c = line.charAt(i);
+        if (c == '-' || Character.isDigit(c)) {
+            while (++i < end && Character.isDigit(line.charAt(i))) {
+                // Keep reading the duration.
+            }
+            put(ATTR_DURATION, 0, ATTR_DURATION.length(), line, begin, i);
+            while (i < end && line.charAt(i) <= ' ') {
+                i++;
+            }
+        }
+        // An unquoted value only ends at a white space if another '=' follows it.
+        int lastEquals = end - 1;
+        while (lastEquals >= i && line.charAt(lastEquals) != '=') {
+            lastEquals--;
+        }
+        Status status = Status.READY;
+        // The key and then its value are read into the connector, the key trimmed.
+        boolean hasKey = false;
+        int keyBegin = 0;
+        int keyEnd = 0;
+        int valueBegin = 0;
+        boolean startWithQuota = false;
+        while (i < end) {
+            c = line.charAt(i++);
+            switch (status) {
+                case READY:
+                    if (Character.isWhitespace(c)) {
+                        // Do nothing
+                    } else if (c == ',') {
+                        put(ATTR_CHANNEL_NAME, 0, ATTR_CHANNEL_NAME.length(), line, i, end);
+                        i = end;
+                    } else {
+                        connector.append(c);
+                        status = Status.READING_KEY;
+                    }
+                    break;
+                case READING_KEY:
+                    if (c == '=') {
+                        keyBegin = 0;
+                        keyEnd = connector.length();
+                        while (keyBegin < keyEnd && connector.charAt(keyBegin) <= ' ') {
+                            keyBegin++;
+                        }
+                        while (keyEnd > keyBegin && connector.charAt(keyEnd - 1) <= ' ') {
+                            keyEnd--;
+                        }
+                        valueBegin = connector.length();
+                        hasKey = true;
+                        status = Status.KEY_READY;
+                    } else {
+                        connector.append(c);
+                    }
+                    break;
+                case KEY_READY:
+                    if (!Character.isWhitespace(c)) {
+                        if (c == '"') {
+                            startWithQuota = true;
+                        } else {
+                            connector.append(c);
+                        }
+                        status = Status.READING_VALUE;
+                    }
+                    break;
+                case READING_VALUE:
+                    if (startWithQuota) {
+                        if (c != '"') {
+                            // The quoted value runs up to the next quote or the end of line.
+                            int start = i - 1;
+                            while (i < end && line.charAt(i) != '"') {
+                                i++;
+                            }
+                            connector.append(line, start, i);
+                            startWithQuota = false;
+                            i++;
+                        }
+                        put(connector, keyBegin, keyEnd, connector, valueBegin,
+                                connector.length());
+                        connector.setLength(0);
+                        hasKey = false;
+                        status = Status.READY;
+                        break;
+                    }
+                    if (Character.isWhitespace(c) && lastEquals >= i) {
+                        if (connector.length() > valueBegin) {
+                            put(connector, keyBegin, keyEnd, connector, valueBegin,
+                                    connector.length());
+                        }
+                        connector.setLength(0);
+                        hasKey = false;
+                        status = Status.READY;
+                    } else {
+                        connector.append(c);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (hasKey && keyEnd > keyBegin && connector.length() > valueBegin) {
+            put(connector, keyBegin, keyEnd, connector, valueBegin, connector.length());
+        }
+        connector.setLength(0);
+        mSchema = null;
+        mValues = null;
+    }
+
+    /**
+     * Fill the slots of the key [keyBegin, keyEnd) with the value [valueBegin, valueEnd), unless
+     * they were filled from a preferred key. Nothing is copied if the schema lacks the key.
+     */
+    private void put(CharSequence key, int keyBegin, int keyEnd, CharSequence value,
+                     int valueBegin, int valueEnd) {
+        String string = null;
+        int entry = mSchema.find(key, keyBegin, keyEnd);
+        while (entry != -1) {
+            int slot = mSchema.slot(entry);
+            int rank = mSchema.rank(entry);
+            if (mValues[slot] == null || rank <= mRanks[slot]) {
+                if (string == null) {
+                    string = value.subSequence(valueBegin, valueEnd).toString();
+                }
+                mValues[slot] = string;
+                mRanks[slot] = rank;
+            }
+            entry = mSchema.findNext(key, keyBegin, keyEnd, entry);
+        }
+    }
+
+    private enum Status {
+        READY, READING_KEY, KEY_READY, READING_VALUE,
+    }
+}
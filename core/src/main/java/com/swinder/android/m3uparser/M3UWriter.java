@@ -0,0 +1,202 @@
+package com.swinder.android.m3uparser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Sink;
+
+/**
+ * Writes a playlist in UTF-8 to an okio sink. Items and heads parsed with
+ * {@link M3UParser#setKeepRawRecords(boolean)} on and not changed since are copied byte for byte,
+ * with the attributes and tags the parser does not read; the other ones are written from their
+ * fields as #EXTINF, #KODIPROP, #EXTVLCOPT and #EXTHTTP lines. A quoted attribute value has no
+ * escape for a double quote, it is written as a single quote.
+ * <p>
+ * <pre>
+ * try (M3UWriter writer = new M3UWriter(Okio.sink(file))) {
+ *     writer.writeHead(playlist.getHead());
+ *     for (M3UItem item : playlist) {
+ *         if (keep(item)) {
+ *             writer.write(item);
+ *         }
+ *     }
+ * }
+ * </pre>
+ */
+public final class M3UWriter implements Closeable {
+    private final BufferedSink mSink;
+    private int mCopied = 0;
+    private int mEncoded = 0;
+
+    public M3UWriter(Sink sink) {
+        mSink = sink instanceof BufferedSink ? (BufferedSink) sink : Okio.buffer(sink);
+    }
+
+    /**
+     * Write the #EXTM3U line, the head may be null.
+     */
+    public void writeHead(M3UHead head) throws IOException {
+        byte[] raw = head != null ? head.getRaw() : null;
+        if (raw != null) {
+            mSink.write(raw);
+            return;
+        }
+        mSink.writeUtf8("#EXTM3U");
+        if (head != null) {
+            writeAttribute("x-tvg-url", head.getTVGUrl());
+            writeAttribute("name", head.getName());
+            writeAttribute("type", head.getType());
+            writeAttribute("dlna_extras", head.getDLNAExtras());
+            writeAttribute("plugin", head.getPlugin());
+        }
+        mSink.writeByte('\n');
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             if the item has no stream URL.
+     */
+    public void write(M3UItem item) throws IOException {
+        byte[] raw = item.getRaw();
+        if (raw != null) {
+            mSink.write(raw);
+            mCopied++;
+            return;
+        }
+        if (item.getStreamURL() == null) {
+            throw new IllegalArgumentException("No stream URL: " + item.getChannelName());
+        }
+        mSink.writeUtf8("#EXTINF:").writeUtf8(Integer.toString(item.getDuration()));
+        writeAttribute("tvg-id", item.getChannelID());
+        writeAttribute("tvg-logo", item.getLogoURL());
+        writeAttribute("group-title", item.getGroupTitle());
+        writeAttribute("type", item.getType());
+        writeAttribute("dlna_extras", item.getDLNAExtras());
+        writeAttribute("plugin", item.getPlugin());
+        Map<String, String> attributes = item.getAttributes();
+        if (attributes != null) {
+            for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                writeAttribute(entry.getKey(), entry.getValue());
+            }
+        }
+        if (item.getChannelName() != null) {
+            // Without ',' the item has no name, with it an empty one.
+            mSink.writeByte(',').writeUtf8(item.getChannelName());
+        }
+        mSink.writeByte('\n');
+        if (item.getLicenseType() != null) {
+            mSink.writeUtf8("#KODIPROP:inputstream.adaptive.license_type=")
+                    .writeUtf8(item.getLicenseType()).writeByte('\n');
+        }
+        if (item.getLicenseKey() != null) {
+            mSink.writeUtf8("#KODIPROP:inputstream.adaptive.license_key=")
+                    .writeUtf8(item.getLicenseKey()).writeByte('\n');
+        }
+        String userAgent = item.getUserAgent();
+        if (userAgent != null) {
+            mSink.writeUtf8("#EXTVLCOPT:http-user-agent=").writeUtf8(userAgent).writeByte('\n');
+        }
+        Map<String, String> header = item.getHttpHeader();
+        if (header != null) {
+            writeHeader(header, userAgent);
+        }
+        mSink.writeUtf8(item.getStreamURL()).writeByte('\n');
+        mEncoded++;
+    }
+
+    public void write(Iterable<M3UItem> items) throws IOException {
+        for (M3UItem item : items) {
+            write(item);
+        }
+    }
+
+    /**
+     * @return the number of items copied from their raw record.
+     */
+    public int getCopiedCount() {
+        return mCopied;
+    }
+
+    /**
+     * @return the number of items written from their fields.
+     */
+    public int getEncodedCount() {
+        return mEncoded;
+    }
+
+    public void flush() throws IOException {
+        mSink.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSink.close();
+    }
+
+    private void writeAttribute(String name, String value) throws IOException {
+        if (value != null) {
+            // The value would end at its first '"'.
+            mSink.writeByte(' ').writeUtf8(name).writeUtf8("=\"")
+                    .writeUtf8(value.replace('"', '\'')).writeByte('"');
+        }
+    }
+
+    /**
+     * Write the header as #EXTHTTP, without the user agent applied by the item as it is written
+     * as #EXTVLCOPT.
+     */
+    private void writeHeader(Map<String, String> header, String userAgent) throws IOException {
+        boolean first = true;
+        for (Map.Entry<String, String> entry : header.entrySet()) {
+            if (userAgent != null && "user-agent".equals(entry.getKey())
+                    && userAgent.equals(entry.getValue())) {
+                continue;
+            }
+            mSink.writeUtf8(first ? "#EXTHTTP:{" : ",");
+            writeJsonString(entry.getKey());
+            mSink.writeByte(':');
+            writeJsonString(entry.getValue());
+            first = false;
+        }
+        if (!first) {
+            mSink.writeUtf8("}\n");
+        }
+    }
+
+    private void writeJsonString(String value) throws IOException {
+        mSink.writeByte('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '"' && c != '\\' && c >= ' ') {
+                continue;
+            }
+            mSink.writeUtf8(value, start, i);
+            switch (c) {
+                case '"':
+                    mSink.writeUtf8("\\\"");
+                    break;
+                case '\\':
+                    mSink.writeUtf8("\\\\");
+                    break;
+                case '\n':
+                    mSink.writeUtf8("\\n");
+                    break;
+                case '\r':
+                    mSink.writeUtf8("\\r");
+                    break;
+                case '\t':
+                    mSink.writeUtf8("\\t");
+                    break;
+                default:
+                    mSink.writeUtf8(String.format("\\u%04x", (int) c));
+                    break;
+            }
+            start = i + 1;
+        }
+        mSink.writeUtf8(value, start, value.length()).writeByte('"');
+    }
+}
@@ -0,0 +1,374 @@
+package com.swinder.android.m3uparser;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import okio.BufferedSource;
+import okio.ByteString;
+
+/**
+ * A minimal XML pull reader over an okio source, enough for XMLTV: elements, attributes, text,
+ * CDATA and the predefined and numeric entities. Comments, processing instructions and the
+ * DOCTYPE are skipped, namespaces and DTD entities are not supported.
+ * <p>
+ * Only the current event is held in memory, and {@link #skip()} skips an element without decoding
+ * it, so a document of any size is read in constant memory.
+ */
+final class M3UXmlReader {
+    static final int END_DOCUMENT = 1;
+    static final int START_TAG = 2;
+    static final int END_TAG = 3;
+    static final int TEXT = 4;
+
+    private static final ByteString COMMENT_END = ByteString.encodeUtf8("-->");
+    private static final ByteString PI_END = ByteString.encodeUtf8("?>");
+    private static final ByteString CDATA_START = ByteString.encodeUtf8("<![CDATA[");
+    private static final ByteString CDATA_END = ByteString.encodeUtf8("]]>");
+    private static final ByteString COMMENT_START = ByteString.encodeUtf8("<!--");
+    private static final ByteString DOCTYPE_END = ByteString.encodeUtf8("]>");
+
+    private final BufferedSource mSource;
+    private Charset mCharset = StandardCharsets.UTF_8;
+    private final List<String> mAttributes = new ArrayList<>();
+    private String mName = null;
+    private String mText = null;
+    private boolean mEmptyElement = false;
+    private int mDepth = 0;
+
+    M3UXmlReader(BufferedSource source) {
+        mSource = source;
+    }
+
+    /**
+     * @return the next event, one of START_TAG, END_TAG, TEXT or END_DOCUMENT.
+     */
+    int next() throws IOException {
+        return next(false);
+    }
+
+    /**
+     * @return the name of the current element.
+     */
+    String getName() {
+        return mName;
+    }
+
+    /**
+     * @return the value of an attribute of the current start tag, null if it has none.
+     */
+    String getAttributeValue(String name) {
+        for (int i = 0; i < mAttributes.size(); i += 2) {
+            if (mAttributes.get(i).equals(name)) {
+                return mAttributes.get(i + 1);
+            }
+        }
+        return null;
+    }
+
+    String getText() {
+        return mText;
+    }
+
+    int getDepth() {
+        return mDepth;
+    }
+
+    /**
+     * Skip the element of the current start tag, its end tag is the current event afterwards.
+     */
+    void skip() throws IOException {
+        int depth = mDepth;
+        while (mDepth >= depth) {
+            if (next(true) == END_DOCUMENT) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read the text of the element of the current start tag, skipping the elements in it.
+     *
+     * @return the text, its end tag is the current event afterwards.
+     */
+    String nextText() throws IOException {
+        int depth = mDepth;
+        StringBuilder text = null;
+        String first = null;
+        int event;
+        while ((event = next(false)) != END_DOCUMENT) {
+            if (event == TEXT && mDepth == depth) {
+                if (first == null) {
+                    first = mText;
+                } else {
+                    if (text == null) {
+                        text = new StringBuilder(first);
+                    }
+                    text.append(mText);
+                }
+            } else if (event == START_TAG) {
+                skip();
+            } else if (event == END_TAG && mDepth < depth) {
+                break;
+            }
+        }
+        return text != null ? text.toString() : first != null ? first : "";
+    }
+
+    private int next(boolean skipText) throws IOException {
+        if (mEmptyElement) {
+            mEmptyElement = false;
+            mDepth--;
+            return END_TAG;
+        }
+        while (true) {
+            mText = null;
+            if (!mSource.request(1)) {
+                return END_DOCUMENT;
+            }
+            if (mSource.getBuffer().getByte(0) != '<') {
+                long end = mSource.indexOf((byte) '<');
+                // Not found, the whole rest of the document is buffered.
+                long length = end == -1 ? mSource.getBuffer().size() : end;
+                if (skipText) {
+                    mSource.skip(length);
+                } else {
+                    mText = unescape(mSource.readString(length, mCharset));
+                }
+                return TEXT;
+            }
+            if (!mSource.request(2)) {
+                throw new IOException("Unterminated tag");
+            }
+            byte second = mSource.getBuffer().getByte(1);
+            if (second == '?') {
+                String instruction = readUntil(PI_END);
+                if (instruction.startsWith("<?xml ")) {
+                    readDeclaration(instruction);
+                }
+            } else if (second == '!') {
+                if (mSource.rangeEquals(0, COMMENT_START)) {
+                    skipUntil(COMMENT_END);
+                } else if (mSource.rangeEquals(0, CDATA_START)) {
+                    mSource.skip(CDATA_START.size());
+                    long end = mSource.indexOf(CDATA_END);
+                    if (end == -1) {
+                        throw new IOException("Unterminated CDATA section");
+                    }
+                    if (skipText) {
+                        mSource.skip(end);
+                    } else {
+                        mText = mSource.readString(end, mCharset);
+                    }
+                    mSource.skip(CDATA_END.size());
+                    return TEXT;
+                } else {
+                    skipDoctype();
+                }
+            } else if (second == '/') {
+                String tag = readTag();
+                mName = tag.substring(2, tag.length() - 1).trim();
+                mDepth--;
+                return END_TAG;
+            } else {
+                readStartTag(readTag(), skipText);
+                mDepth++;
+                return START_TAG;
+            }
+        }
+    }
+
+    /**
+     * @return the tag from its '<' to its '>', which may be in an attribute value.
+     */
+    private String readTag() throws IOException {
+        String tag = readUntil((byte) '>');
+        char quote = 0;
+        for (int i = 0; ; i++) {
+            if (i == tag.length()) {
+                if (quote == 0) {
+                    return tag;
+                }
+                tag += readUntil((byte) '>');
+            }
+            char c = tag.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            }
+        }
+    }
+
+    private void readStartTag(String tag, boolean skipAttributes) throws IOException {
+        int end = tag.length() - 1;
+        mEmptyElement = tag.charAt(end - 1) == '/';
+        if (mEmptyElement) {
+            end--;
+        }
+        int i = 1;
+        while (i < end && !isSpace(tag.charAt(i))) {
+            i++;
+        }
+        mName = tag.substring(1, i);
+        mAttributes.clear();
+        if (skipAttributes) {
+            return;
+        }
+        while (true) {
+            while (i < end && isSpace(tag.charAt(i))) {
+                i++;
+            }
+            if (i >= end) {
+                return;
+            }
+            int nameStart = i;
+            while (i < end && tag.charAt(i) != '=' && !isSpace(tag.charAt(i))) {
+                i++;
+            }
+            String name = tag.substring(nameStart, i);
+            while (i < end && isSpace(tag.charAt(i))) {
+                i++;
+            }
+            if (i == end || tag.charAt(i) != '=') {
+                throw new IOException("Attribute without value: " + name + " in " + mName);
+            }
+            i++;
+            while (i < end && isSpace(tag.charAt(i))) {
+                i++;
+            }
+            char quote = i < end ? tag.charAt(i) : 0;
+            int valueEnd = quote == '"' || quote == '\'' ? tag.indexOf(quote, i + 1) : -1;
+            if (valueEnd == -1 || valueEnd > end) {
+                throw new IOException("Unquoted attribute value: " + name + " in " + mName);
+            }
+            mAttributes.add(name);
+            mAttributes.add(unescape(tag.substring(i + 1, valueEnd)));
+            i = valueEnd + 1;
+        }
+    }
+
+    /**
+     * Honor the encoding of the XML declaration, UTF-8 otherwise.
+     */
+    private void readDeclaration(String declaration) {
+        int i = declaration.indexOf("encoding");
+        if (i == -1) {
+            return;
+        }
+        int start = declaration.indexOf('=', i) + 1;
+        while (start > 0 && start < declaration.length() && isSpace(declaration.charAt(start))) {
+            start++;
+        }
+        if (start <= 0 || start == declaration.length()) {
+            return;
+        }
+        char quote = declaration.charAt(start);
+        int end = declaration.indexOf(quote, start + 1);
+        if (end == -1) {
+            return;
+        }
+        try {
+            mCharset = Charset.forName(declaration.substring(start + 1, end));
+        } catch (IllegalArgumentException ex) {
+            M3ULog.e(M3UParser.TAG, ". M3UParser readDeclaration() unsupported encoding: "
+                    + declaration.substring(start + 1, end));
+        }
+    }
+
+    private void skipDoctype() throws IOException {
+        String doctype = readUntil((byte) '>');
+        if (doctype.indexOf('[') != -1 && doctype.indexOf(']') == -1) {
+            // The internal subset may contain '>'.
+            skipUntil(DOCTYPE_END);
+        }
+    }
+
+    private String readUntil(byte b) throws IOException {
+        long end = mSource.indexOf(b);
+        if (end == -1) {
+            throw new IOException("Unterminated markup");
+        }
+        return mSource.readString(end + 1, mCharset);
+    }
+
+    private String readUntil(ByteString bytes) throws IOException {
+        long end = mSource.indexOf(bytes);
+        if (end == -1) {
+            throw new IOException("Unterminated markup");
+        }
+        return mSource.readString(end + bytes.size(), mCharset);
+    }
+
+    private void skipUntil(ByteString bytes) throws IOException {
+        long end = mSource.indexOf(bytes);
+        if (end == -1) {
+            throw new IOException("Unterminated markup");
+        }
+        mSource.skip(end + bytes.size());
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    static String unescape(String text) {
+        int amp = text.indexOf('&');
+        if (amp == -1) {
+            return text;
+        }
+        StringBuilder builder = new StringBuilder(text.length());
+        int start = 0;
+        while (amp != -1) {
+            int semicolon = text.indexOf(';', amp);
+            if (semicolon == -1) {
+                break;
+            }
+            builder.append(text, start, amp);
+            String entity = text.substring(amp + 1, semicolon);
+            int c = entity(entity);
+            if (c == -1) {
+                // Unknown, kept as written.
+                builder.append(text, amp, semicolon + 1);
+            } else {
+                builder.appendCodePoint(c);
+            }
+            start = semicolon + 1;
+            amp = text.indexOf('&', start);
+        }
+        builder.append(text, start, text.length());
+        return builder.toString();
+    }
+
+    private static int entity(String entity) {
+        switch (entity) {
+            case "lt":
+                return '<';
+            case "gt":
+                return '>';
+            case "amp":
+                return '&';
+            case "quot":
+                return '"';
+            case "apos":
+                return '\'';
+            default:
+                break;
+        }
+        if (entity.length() < 2 || entity.charAt(0) != '#') {
+            return -1;
+        }
+        try {
+            int c = entity.charAt(1) == 'x' || entity.charAt(1) == 'X'
+                    ? Integer.parseInt(entity.substring(2), 16)
+                    : Integer.parseInt(entity.substring(1));
+            return Character.isValidCodePoint(c) ? c : -1;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+}
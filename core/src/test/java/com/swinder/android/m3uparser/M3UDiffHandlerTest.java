@@ -0,0 +1,77 @@
+package com.swinder.android.m3uparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okio.Buffer;
+
+public class M3UDiffHandlerTest {
+    private final List<String> mChanges = new ArrayList<>();
+    private final M3UDiffHandler mHandler = new M3UDiffHandler(
+            new M3UDiffHandler.M3UChangeListener() {
+                @Override
+                public boolean onItemAdded(M3UItem item) {
+                    return mChanges.add("+" + item.getChannelName());
+                }
+
+                @Override
+                public boolean onItemRemoved(M3UItem item) {
+                    return mChanges.add("-" + item.getChannelName());
+                }
+
+                @Override
+                public boolean onItemChanged(M3UItem oldItem, M3UItem item) {
+                    return mChanges.add(oldItem.getChannelName() + ">" + item.getChannelName());
+                }
+            });
+
+    private void parse(String... records) throws IOException {
+        StringBuilder playlist = new StringBuilder("#EXTM3U\n");
+        for (String record : records) {
+            playlist.append(record).append('\n');
+        }
+        mChanges.clear();
+        assertTrue(new M3UParser().parse(new Buffer().writeUtf8(playlist.toString()), mHandler,
+                true));
+    }
+
+    private static String item(String id, String name, String url) {
+        return "#EXTINF:-1 tvg-id=\"" + id + "\"," + name + "\n" + url;
+    }
+
+    @Test
+    public void keysDuplicateIdsApartFromIdsWithTheirSuffix() throws IOException {
+        String[] playlist = {
+                item("a", "A", "http://host/1"),
+                item("a", "A2", "http://host/2"),
+                item("a#1", "A#1", "http://host/3"),
+        };
+        parse(playlist);
+        assertEquals(3, mChanges.size());
+        parse(playlist);
+        assertEquals(new ArrayList<>(), mChanges);
+        parse(playlist[0], playlist[2]);
+        assertEquals(1, mChanges.size());
+        assertEquals("-A2", mChanges.get(0));
+    }
+
+    @Test
+    public void findsChangesKeepingTheStringHashCode() throws IOException {
+        // "Aa" and "BB" have the same length and hash code.
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        parse(item("x", "Aa", "http://host/1"));
+        parse(item("x", "BB", "http://host/1"));
+        assertEquals(1, mChanges.size());
+        assertEquals("Aa>BB", mChanges.get(0));
+        // Moving text from a field to the next one changes the item too.
+        parse("#EXTINF:-1 tvg-id=\"x\" group-title=\"ab\",c\nhttp://host/1");
+        parse("#EXTINF:-1 tvg-id=\"x\" group-title=\"a\",bc\nhttp://host/1");
+        assertEquals(1, mChanges.size());
+    }
+}
@@ -0,0 +1,53 @@
+package com.swinder.android.m3uparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import okio.Buffer;
+
+public class M3ULineReaderTest {
+    @Test
+    public void splitsOnEveryLineTerminator() throws IOException {
+        M3ULineReader reader = new M3ULineReader(new Buffer().writeUtf8("a\rbb\r\nc\n\r\rd"),
+                StandardCharsets.UTF_8);
+        assertLine(reader, "a", 2, '\r');
+        assertLine(reader, "bb", 6, '\n');
+        assertLine(reader, "c", 8, '\n');
+        assertLine(reader, "", 9, '\r');
+        assertLine(reader, "", 10, '\r');
+        assertLine(reader, "d", 11, '\n');
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void endsTheLastLineWithALoneCarriageReturn() throws IOException {
+        M3ULineReader reader = new M3ULineReader(new Buffer().writeUtf8("\u00e9\r"),
+                StandardCharsets.UTF_8);
+        assertLine(reader, "\u00e9", 3, '\r');
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void keepsTheCarriageReturnOfCrLfInTheLine() throws IOException {
+        M3ULineReader reader = new M3ULineReader(new Buffer().writeUtf8("x \r\n"),
+                StandardCharsets.UTF_8);
+        assertTrue(reader.next());
+        assertEquals(3, reader.length());
+        assertEquals(1, reader.end(reader.begin()));
+        assertEquals(4, reader.offset());
+    }
+
+    private static void assertLine(M3ULineReader reader, String line, long offset,
+                                   char terminator) throws IOException {
+        assertTrue(reader.next());
+        assertEquals(line, reader.string(reader.begin(), reader.end(reader.begin())));
+        assertEquals(offset, reader.offset());
+        assertEquals(terminator, reader.terminator());
+    }
+}
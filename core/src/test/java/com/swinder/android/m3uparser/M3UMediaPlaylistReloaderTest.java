@@ -0,0 +1,253 @@
+package com.swinder.android.m3uparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+public class M3UMediaPlaylistReloaderTest {
+    private static final HttpUrl BASE = HttpUrl.get("http://cdn.host/live/index.m3u8");
+
+    private MockWebServer mServer;
+    private M3UMediaPlaylistReloader mReloader;
+
+    @Before
+    public void setUp() throws Exception {
+        M3ULog.setLevel(M3ULog.NONE);
+        mServer = new MockWebServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (mReloader != null) {
+            mReloader.stop();
+        }
+        mServer.shutdown();
+        M3ULog.setLevel(M3ULog.INFO);
+    }
+
+    /**
+     * @return a media playlist of the segments [first, first + count).
+     */
+    private static String playlist(long first, int count, boolean end) {
+        StringBuilder playlist = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n")
+                .append("#EXT-X-TARGETDURATION:1\n")
+                .append("#EXT-X-DISCONTINUITY-SEQUENCE:0\n")
+                .append("#EXT-X-MEDIA-SEQUENCE:").append(first).append('\n');
+        for (long sequence = first; sequence < first + count; sequence++) {
+            if (sequence % 4 == 0) {
+                playlist.append("#EXT-X-DISCONTINUITY\n");
+            }
+            playlist.append("#EXT-X-PROGRAM-DATE-TIME:2024-01-01T00:00:00Z\n")
+                    .append("#EXTINF:0.98,").append(sequence % 3 == 0 ? "Title " + sequence : "")
+                    .append("\r\n")
+                    .append("seg").append(sequence).append(".ts\n");
+        }
+        if (end) {
+            playlist.append("#EXT-X-ENDLIST\n");
+        }
+        return playlist.toString();
+    }
+
+    private List<M3USegment> update(String playlist) throws IOException {
+        synchronized (mReloader) {
+            return mReloader.update(new Buffer().writeUtf8(playlist), BASE);
+        }
+    }
+
+    private static List<Long> sequences(List<M3USegment> segments) {
+        List<Long> sequences = new ArrayList<>();
+        for (M3USegment segment : segments) {
+            sequences.add(segment.getMediaSequence());
+        }
+        return sequences;
+    }
+
+    private static List<Long> range(long first, long end) {
+        List<Long> range = new ArrayList<>();
+        for (long sequence = first; sequence < end; sequence++) {
+            range.add(sequence);
+        }
+        return range;
+    }
+
+    private M3UMediaPlaylistReloader newReloader() {
+        return new M3UMediaPlaylistReloader(new M3UParser(), BASE.toString(), segments -> {
+        });
+    }
+
+    @Test
+    public void readsTheSegments() throws IOException {
+        mReloader = newReloader();
+        List<M3USegment> segments = update(playlist(10, 3, false));
+        assertEquals(range(10, 13), sequences(segments));
+        M3USegment segment = segments.get(2);
+        assertEquals("http://cdn.host/live/seg12.ts", segment.getURI());
+        assertEquals(0.98, segment.getDuration(), 0);
+        assertTrue(segment.isDiscontinuity());
+        assertEquals("Title 12", segment.getTitle());
+        assertNull(segments.get(0).getTitle());
+        assertFalse(segments.get(0).isDiscontinuity());
+        assertEquals(1000, mReloader.getTargetDurationMillis());
+        assertFalse(mReloader.isEnded());
+    }
+
+    @Test
+    public void skipsTheSegmentsAlreadyDelivered() throws IOException {
+        mReloader = newReloader();
+        assertEquals(range(10, 15), sequences(update(playlist(10, 5, false))));
+        assertEquals(range(15, 17), sequences(update(playlist(12, 5, false))));
+        assertTrue(update(playlist(12, 5, false)).isEmpty());
+        // Segments missed between two reloads are not made up.
+        assertEquals(range(30, 35), sequences(update(playlist(30, 5, false))));
+    }
+
+    @Test
+    public void deliversEverythingAgainWhenTheSequenceGoesBack() throws IOException {
+        mReloader = newReloader();
+        update(playlist(100, 5, false));
+        List<M3USegment> segments = update(playlist(0, 3, false));
+        assertEquals(range(0, 3), sequences(segments));
+        assertEquals(range(0, 3), sequences(mReloader.getWindow()));
+        assertEquals(range(3, 4), sequences(update(playlist(1, 3, false))));
+    }
+
+    @Test
+    public void endsAtEndList() throws IOException {
+        mReloader = newReloader();
+        update(playlist(0, 5, false));
+        assertEquals(range(5, 6), sequences(update(playlist(1, 5, true))));
+        assertTrue(mReloader.isEnded());
+    }
+
+    @Test
+    public void keepsTheLastSegmentsInTheWindow() throws IOException {
+        mReloader = newReloader();
+        mReloader.setWindowSize(3);
+        update(playlist(0, 5, false));
+        assertEquals(range(2, 5), sequences(mReloader.getWindow()));
+        update(playlist(3, 4, false));
+        assertEquals(range(4, 7), sequences(mReloader.getWindow()));
+        mReloader.setWindowSize(2);
+        assertEquals(range(5, 7), sequences(mReloader.getWindow()));
+        mReloader.setWindowSize(4);
+        assertEquals(range(5, 7), sequences(mReloader.getWindow()));
+        update(playlist(5, 5, false));
+        assertEquals(range(6, 10), sequences(mReloader.getWindow()));
+    }
+
+    @Test
+    public void reloadsByTargetDurationUntilEndList() throws Exception {
+        final List<Long> times = Collections.synchronizedList(new ArrayList<>());
+        final List<String> validators = Collections.synchronizedList(new ArrayList<>());
+        mServer.setDispatcher(new Dispatcher() {
+            private int mRequests = 0;
+
+            @Override
+            public synchronized MockResponse dispatch(RecordedRequest request) {
+                times.add(System.nanoTime());
+                validators.add(request.getHeader("If-None-Match"));
+                switch (mRequests++) {
+                    case 0:
+                        return new MockResponse().setHeader("ETag", "\"v0\"")
+                                .setBody(playlist(0, 3, false));
+                    case 1:
+                        return new MockResponse().setResponseCode(304);
+                    case 2:
+                        return new MockResponse().setResponseCode(500);
+                    default:
+                        return new MockResponse().setBody(playlist(1, 3, true));
+                }
+            }
+        });
+        mServer.start();
+        final List<Long> delivered = Collections.synchronizedList(new ArrayList<>());
+        final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch ended = new CountDownLatch(1);
+        mReloader = new M3UMediaPlaylistReloader(new M3UParser(),
+                mServer.url("/live/index.m3u8").toString(),
+                new M3UMediaPlaylistReloader.M3USegmentListener() {
+                    @Override
+                    public void onNewSegments(List<M3USegment> segments) {
+                        delivered.addAll(sequences(segments));
+                    }
+
+                    @Override
+                    public void onEndList() {
+                        ended.countDown();
+                    }
+
+                    @Override
+                    public void onReloadFailed(String error) {
+                        errors.add(error);
+                    }
+                });
+        mReloader.start();
+        assertTrue(ended.await(10, TimeUnit.SECONDS));
+        assertEquals(range(0, 4), delivered);
+        assertEquals(1, errors.size());
+        assertEquals("\"v0\"", validators.get(1));
+        // A target duration after new segments, half of it after the 304, a target duration
+        // after the failure.
+        assertInterval(1000, times.get(1) - times.get(0));
+        assertInterval(500, times.get(2) - times.get(1));
+        assertInterval(1000, times.get(3) - times.get(2));
+        Thread.sleep(1500);
+        assertEquals(4, times.size());
+        assertTrue(mReloader.isEnded());
+        assertEquals(mServer.url("/live/seg3.ts").toString(),
+                mReloader.getWindow().get(3).getURI());
+    }
+
+    @Test
+    public void stopsAndResumesWithoutDeliveringTwice() throws Exception {
+        mServer.setDispatcher(new Dispatcher() {
+            private int mRequests = 0;
+
+            @Override
+            public synchronized MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody(playlist(mRequests++, 3, false));
+            }
+        });
+        mServer.start();
+        final List<Long> delivered = Collections.synchronizedList(new ArrayList<>());
+        mReloader = new M3UMediaPlaylistReloader(new M3UParser(),
+                mServer.url("/live/index.m3u8").toString(),
+                segments -> delivered.addAll(sequences(segments)));
+        mReloader.start();
+        mReloader.start();
+        Thread.sleep(1500);
+        mReloader.stop();
+        int requests = mServer.getRequestCount();
+        assertEquals(2, requests);
+        Thread.sleep(1200);
+        assertEquals(requests, mServer.getRequestCount());
+        mReloader.start();
+        Thread.sleep(300);
+        assertEquals(range(0, 5), delivered);
+    }
+
+    private static void assertInterval(long expectedMillis, long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        assertTrue("Interval " + millis + "ms, expected " + expectedMillis + "ms",
+                millis > expectedMillis - 150 && millis < expectedMillis + 400);
+    }
+}
@@ -0,0 +1,159 @@
+package com.swinder.android.m3uparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks that {@link M3UParser#parseParallel(File, M3UParser.M3UHandler, boolean, boolean)} hands
+ * the same items as a sequential parse, whatever the line terminators and wherever the chunks
+ * are cut.
+ */
+public class M3UParallelParserTest {
+    /**
+     * Over 4 MB, so a pool of 2 threads splits it in chunks of 1 MB at least 4 times.
+     */
+    private static final int ITEMS = 25000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final ForkJoinPool mPool = new ForkJoinPool(2);
+    private M3UParser mParser;
+
+    @Before
+    public void setUp() {
+        M3ULog.setLevel(M3ULog.NONE);
+        mParser = new M3UParser();
+        mParser.setForkJoinPool(mPool);
+    }
+
+    @After
+    public void tearDown() {
+        mPool.shutdownNow();
+        M3ULog.setLevel(M3ULog.INFO);
+    }
+
+    @Test
+    public void matchesTheSequentialParseWithLineFeeds() throws IOException {
+        assertSameItems(playlist(1, "\n"));
+    }
+
+    @Test
+    public void matchesTheSequentialParseWithCrLf() throws IOException {
+        assertSameItems(playlist(2, "\r\n"));
+    }
+
+    @Test
+    public void matchesTheSequentialParseWithCarriageReturns() throws IOException {
+        assertSameItems(playlist(3, "\r"));
+    }
+
+    private void assertSameItems(String playlist) throws IOException {
+        File file = mFolder.newFile();
+        Files.write(file.toPath(), playlist.getBytes(StandardCharsets.UTF_8));
+        assertTrue(file.length() > 4 * 1024 * 1024);
+
+        Handler sequential = new Handler();
+        assertTrue(mParser.parse(file, sequential, true));
+        assertEquals(ITEMS, sequential.mItems.size());
+        assertEquals("http://epg.host/guide.xml", sequential.mTVGUrl);
+
+        Handler ordered = new Handler();
+        assertTrue(mParser.parseParallel(file, ordered, true, true));
+        assertEquals(sequential.mItems, ordered.mItems);
+        assertEquals(sequential.mTVGUrl, ordered.mTVGUrl);
+
+        Handler unordered = new Handler();
+        assertTrue(mParser.parseParallel(file, unordered, true, false));
+        List<String> expected = new ArrayList<>(sequential.mItems);
+        List<String> actual = new ArrayList<>(unordered.mItems);
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * @return records of varied shapes and lengths, so the chunk offsets fall in the middle of
+     *         all kinds of lines.
+     */
+    private static String playlist(long seed, String eol) {
+        Random random = new Random(seed);
+        StringBuilder playlist = new StringBuilder("#EXTM3U")
+                .append(" x-tvg-url=\"http://epg.host/guide.xml\"").append(eol);
+        for (int i = 0; i < ITEMS; i++) {
+            if (random.nextInt(10) == 0) {
+                playlist.append("# Comment ").append(i).append(eol).append(eol);
+            }
+            playlist.append("#EXTINF:-1 tvg-id=\"ch").append(i).append("\" group-title=\"G")
+                    .append(random.nextInt(20)).append("\" tvg-logo=\"http://logo.host/")
+                    .append(randomText(random)).append(".png\",Channel \u00e9 ").append(i)
+                    .append(eol);
+            if (random.nextInt(3) == 0) {
+                playlist.append("#KODIPROP:inputstream.adaptive.license_type=clearkey").append(eol)
+                        .append("#KODIPROP:inputstream.adaptive.license_key=")
+                        .append(randomText(random)).append(eol);
+            }
+            if (random.nextInt(4) == 0) {
+                playlist.append("#EXTVLCOPT:http-user-agent=Agent/").append(random.nextInt(5))
+                        .append(eol);
+            }
+            if (random.nextInt(5) == 0) {
+                playlist.append("#EXTHTTP:{\"referer\":\"http://ref").append(random.nextInt(3))
+                        .append(".host/\"}").append(eol);
+            }
+            playlist.append("http://stream.host/").append(i).append('/').append(randomText(random))
+                    .append(".m3u8").append(eol);
+        }
+        return playlist.toString();
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int i = random.nextInt(120); i >= 0; i--) {
+            text.append((char) ('a' + random.nextInt(26)));
+        }
+        return text.toString();
+    }
+
+    private static final class Handler implements M3UParser.M3UHandler {
+        private final List<String> mItems = new ArrayList<>();
+        private String mTVGUrl = null;
+
+        @Override
+        public boolean onSetEXTM3U(M3UHead header) {
+            mTVGUrl = header.getTVGUrl();
+            return true;
+        }
+
+        @Override
+        public boolean onReadEXTM3U() {
+            return true;
+        }
+
+        @Override
+        public boolean onReadEXTINF(M3UItem item) {
+            mItems.add(item.getChannelID() + "|" + item.getChannelName() + "|"
+                    + item.getGroupTitle() + "|" + item.getLogoURL() + "|"
+                    + item.getLicenseType() + "|" + item.getLicenseKey() + "|"
+                    + item.getUserAgent() + "|" + item.getHttpHeader() + "|"
+                    + item.getStreamURL());
+            return true;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.swinder.android.m3uparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
+/**
+ * Checks that a download dropped in the middle of the playlist is resumed with a range request
+ * from the last record, without handing an item twice.
+ */
+public class M3UParserResumeTest {
+    private static final int ITEMS = 5000;
+
+    private final byte[] mPlaylist = playlist();
+    private MockWebServer mServer;
+    /**
+     * The responses which are dropped halfway through their body.
+     */
+    private int mDrops = 0;
+    private String mETag = "\"v1\"";
+    private boolean mChangeAfterFirst = false;
+    private boolean mIgnoreRanges = false;
+    private final List<RecordedRequest> mRequests = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        M3ULog.setLevel(M3ULog.NONE);
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return respond(request);
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+        M3ULog.setLevel(M3ULog.INFO);
+    }
+
+    @Test
+    public void resumesFromTheLastRecordWithARangeRequest() {
+        mDrops = 1;
+        Handler handler = new Handler();
+        assertTrue(new M3UParser().parse(url(), handler, true));
+        assertNull(handler.mCheckpoint);
+        assertEquals(2, mRequests.size());
+        assertNull(mRequests.get(0).getHeader("Range"));
+        String range = mRequests.get(1).getHeader("Range");
+        assertNotNull(range);
+        assertTrue(range, range.matches("bytes=[1-9][0-9]*-"));
+        assertEquals(mETag, mRequests.get(1).getHeader("If-Range"));
+        assertAllItemsOnce(handler.mUrls);
+    }
+
+    @Test
+    public void failsWithACheckpointOnceResumesRunOut() {
+        mDrops = Integer.MAX_VALUE;
+        Handler handler = new Handler();
+        M3UParser parser = new M3UParser();
+        parser.setMaxResumes(2);
+        assertFalse(parser.parse(url(), handler, true));
+        assertEquals(3, mRequests.size());
+        assertNotNull(handler.mCheckpoint);
+        assertTrue(handler.mCheckpoint.getOffset() > 0);
+        assertEquals(handler.mUrls.size(), new HashSet<>(handler.mUrls).size());
+
+        // Resumed later from the stored checkpoint, the rest of the items follow.
+        mDrops = 0;
+        Handler rest = new Handler();
+        M3UCheckpoint checkpoint = M3UCheckpoint.fromToken(handler.mCheckpoint.toToken());
+        assertTrue(parser.parse(checkpoint, rest, true));
+        List<String> urls = new ArrayList<>(handler.mUrls);
+        urls.addAll(rest.mUrls);
+        assertAllItemsOnce(urls);
+    }
+
+    @Test
+    public void doesNotResumeAChangedPlaylist() {
+        mDrops = 1;
+        mChangeAfterFirst = true;
+        Handler handler = new Handler();
+        assertFalse(new M3UParser().parse(url(), handler, true));
+        assertEquals(handler.mUrls.size(), new HashSet<>(handler.mUrls).size());
+        assertTrue(handler.mUrls.size() < ITEMS);
+    }
+
+    @Test
+    public void skipsToTheCheckpointWhenRangesAreIgnored() {
+        mDrops = 1;
+        mIgnoreRanges = true;
+        Handler handler = new Handler();
+        assertTrue(new M3UParser().parse(url(), handler, true));
+        assertEquals(2, mRequests.size());
+        assertAllItemsOnce(handler.mUrls);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsANegativeNumberOfResumes() {
+        new M3UParser().setMaxResumes(-1);
+    }
+
+    private String url() {
+        return mServer.url("/playlist.m3u").toString();
+    }
+
+    private synchronized MockResponse respond(RecordedRequest request) {
+        mRequests.add(request);
+        if (mChangeAfterFirst && mRequests.size() > 1) {
+            mETag = "\"v2\"";
+        }
+        int start = 0;
+        String range = mIgnoreRanges ? null : request.getHeader("Range");
+        boolean partial = range != null && mETag.equals(request.getHeader("If-Range"));
+        if (partial) {
+            start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+        }
+        MockResponse response = new MockResponse()
+                .setResponseCode(partial ? 206 : 200)
+                .setHeader("ETag", mETag)
+                .setBody(new Buffer().write(mPlaylist, start, mPlaylist.length - start));
+        if (partial) {
+            response.setHeader("Content-Range",
+                    "bytes " + start + "-" + (mPlaylist.length - 1) + "/" + mPlaylist.length);
+        }
+        if (mRequests.size() <= mDrops) {
+            response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+        }
+        return response;
+    }
+
+    private static void assertAllItemsOnce(List<String> urls) {
+        assertEquals(ITEMS, urls.size());
+        for (int i = 0; i < ITEMS; i++) {
+            assertEquals("http://stream.host/" + i + ".m3u8", urls.get(i));
+        }
+    }
+
+    private static byte[] playlist() {
+        StringBuilder playlist = new StringBuilder("#EXTM3U\n");
+        for (int i = 0; i < ITEMS; i++) {
+            playlist.append("#EXTINF:-1 tvg-id=\"ch").append(i).append("\" group-title=\"G")
+                    .append(i % 7).append("\",Channel ").append(i).append('\n');
+            if (i % 3 == 0) {
+                playlist.append("#EXTVLCOPT:http-user-agent=Agent/").append(i % 5).append('\n');
+            }
+            playlist.append("http://stream.host/").append(i).append(".m3u8\n");
+        }
+        return playlist.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class Handler implements M3UParser.M3UHandler {
+        private final List<String> mUrls = new ArrayList<>();
+        private M3UCheckpoint mCheckpoint = null;
+
+        @Override
+        public boolean onSetEXTM3U(M3UHead header) {
+            return true;
+        }
+
+        @Override
+        public boolean onReadEXTM3U() {
+            return true;
+        }
+
+        @Override
+        public boolean onReadEXTINF(M3UItem item) {
+            mUrls.add(item.getStreamURL());
+            return true;
+        }
+
+        @Override
+        public void onInterrupted(M3UCheckpoint checkpoint) {
+            mCheckpoint = checkpoint;
+        }
+    }
+}
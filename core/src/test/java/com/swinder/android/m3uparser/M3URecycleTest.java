@@ -0,0 +1,184 @@
+package com.swinder.android.m3uparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import okio.Buffer;
+
+/**
+ * Checks that a parse with {@link M3UParser#setRecycleItems(boolean)} on hands the same fields as
+ * a parse with new items, nothing of a record being left in the item for the next one.
+ */
+public class M3URecycleTest {
+    private static final String PLAYLIST = "#EXTM3U\n"
+            + "#EXTINF:-1 tvg-id=\"one\" group-title=\"News\" catchup=\"shift\","
+            + "One \u00e9\n"
+            + "#KODIPROP:inputstream.adaptive.license_type=clearkey\n"
+            + "#KODIPROP:inputstream.adaptive.license_key=0011:2233\n"
+            + "#EXTHTTP:{\"referer\":\"http://ref.host/\"}\n"
+            + "http://stream.host/1.m3u8\n"
+            // No #EXTINF line, nothing of the record before must show.
+            + "#EXTVLCOPT:http-user-agent=Agent/1.0\n"
+            + "http://stream.host/2.m3u8\n"
+            + "#EXTINF:5 tvg-id=\"three\" catchup-days=\"7\",Three\n"
+            + "#EXTVLCOPT:http-user-agent=Agent/3.0\n"
+            + "http://stream.host/3.m3u8\n"
+            // Neither attributes nor other tags.
+            + "#EXTINF:-1,Four\n"
+            + "http://stream.host/4.m3u8\n"
+            + "#KODIPROP:inputstream.adaptive.license_type=com.widevine.alpha\n"
+            + "http://stream.host/5.m3u8\n";
+
+    @Before
+    public void setUp() {
+        M3ULog.setLevel(M3ULog.NONE);
+    }
+
+    @After
+    public void tearDown() {
+        M3ULog.setLevel(M3ULog.INFO);
+    }
+
+    private static M3UParser newParser(boolean lazy, boolean recycle) {
+        M3UParser parser = new M3UParser();
+        parser.registerAttribute("catchup");
+        parser.registerAttribute("catchup-days");
+        parser.setLazyItems(lazy);
+        parser.setRecycleItems(recycle);
+        return parser;
+    }
+
+    @Test
+    public void copiesTheRecycledItemsInAPlaylist() throws IOException {
+        assertSamePlaylist(false);
+    }
+
+    @Test
+    public void copiesTheRecycledLazyItemsInAPlaylist() throws IOException {
+        assertSamePlaylist(true);
+    }
+
+    @Test
+    public void doesNotCarryTheUnreadPayloadsOfALazyItem() throws IOException {
+        List<String> expected = items(newParser(true, false), false);
+        Handler handler = new Handler(true);
+        assertTrue(newParser(true, true).parse(new Buffer().writeUtf8(PLAYLIST), handler, true));
+        assertEquals(5, handler.mFields.size());
+        // The payloads of the even items are never parsed, the next item is cleared anyway.
+        for (int i = 1; i < expected.size(); i += 2) {
+            assertEquals(expected.get(i), handler.mFields.get(i));
+        }
+        assertNull(handler.mFields.get(0));
+    }
+
+    private static void assertSamePlaylist(boolean lazy) throws IOException {
+        M3UPlaylist expected = new M3UPlaylist();
+        assertTrue(newParser(lazy, false).parse(new Buffer().writeUtf8(PLAYLIST), expected, true));
+        assertEquals(5, expected.size());
+        assertEquals("shift", expected.get(0).getAttribute("catchup"));
+        assertNull(expected.get(1).getChannelName());
+
+        final M3UPlaylist playlist = new M3UPlaylist();
+        final List<M3UItem> handed = new ArrayList<>();
+        final List<Map<String, String>> maps = new ArrayList<>();
+        assertTrue(newParser(lazy, true).parse(new Buffer().writeUtf8(PLAYLIST),
+                new M3UParser.M3UHandler() {
+                    @Override
+                    public boolean onSetEXTM3U(M3UHead header) {
+                        return playlist.onSetEXTM3U(header);
+                    }
+
+                    @Override
+                    public boolean onReadEXTM3U() {
+                        return playlist.onReadEXTM3U();
+                    }
+
+                    @Override
+                    public boolean onReadEXTINF(M3UItem item) {
+                        handed.add(item);
+                        maps.add(item.getAttributes());
+                        return playlist.onReadEXTINF(item);
+                    }
+                }, true));
+        assertEquals(5, handed.size());
+        for (M3UItem item : handed) {
+            assertSame(handed.get(0), item);
+        }
+        assertEquals(items(expected), items(playlist));
+        for (int i = 0; i < playlist.size(); i++) {
+            Map<String, String> attributes = playlist.get(i).getAttributes();
+            for (Map<String, String> map : maps) {
+                if (map != null) {
+                    assertNotSame(map, attributes);
+                }
+            }
+        }
+    }
+
+    private static List<String> items(M3UParser parser, boolean skipEven) throws IOException {
+        Handler handler = new Handler(skipEven);
+        assertTrue(parser.parse(new Buffer().writeUtf8(PLAYLIST), handler, true));
+        return handler.mFields;
+    }
+
+    private static List<String> items(Iterable<M3UItem> items) {
+        List<String> fields = new ArrayList<>();
+        for (M3UItem item : items) {
+            fields.add(fields(item));
+        }
+        return fields;
+    }
+
+    private static String fields(M3UItem item) {
+        return item.getChannelName() + "|" + item.getChannelID() + "|" + item.getDuration() + "|"
+                + item.getStreamURL() + "|" + item.getGroupTitle() + "|"
+                + item.getLicenseType() + "|" + item.getLicenseKey() + "|"
+                + item.getUserAgent() + "|" + sorted(item.getHttpHeader()) + "|"
+                + sorted(item.getAttributes());
+    }
+
+    private static Map<String, String> sorted(Map<String, String> map) {
+        return map == null ? null : new TreeMap<>(map);
+    }
+
+    private static final class Handler implements M3UParser.M3UHandler {
+        private final List<String> mFields = new ArrayList<>();
+        /**
+         * Whether the items at even positions are left unread.
+         */
+        private final boolean mSkipEven;
+
+        Handler(boolean skipEven) {
+            mSkipEven = skipEven;
+        }
+
+        @Override
+        public boolean onSetEXTM3U(M3UHead header) {
+            return true;
+        }
+
+        @Override
+        public boolean onReadEXTM3U() {
+            return true;
+        }
+
+        @Override
+        public boolean onReadEXTINF(M3UItem item) {
+            mFields.add(mSkipEven && mFields.size() % 2 == 0 ? null : fields(item));
+            return true;
+        }
+    }
+}
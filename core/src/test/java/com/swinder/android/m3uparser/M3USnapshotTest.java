@@ -0,0 +1,223 @@
+package com.swinder.android.m3uparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+
+public class M3USnapshotTest {
+    private static final String PLAYLIST = "#EXTM3U x-tvg-url=\"http://epg.host/guide.xml\""
+            + " name=\"Provider\"\n"
+            + "#EXTINF:-1 tvg-id=\"one\" tvg-logo=\"http://logo.host/1.png\" group-title=\"News\""
+            + " catchup=\"shift\" catchup-days=\"7\",One \u00e9\n"
+            + "#KODIPROP:inputstream.adaptive.license_type=clearkey\n"
+            + "#KODIPROP:inputstream.adaptive.license_key=0011:2233\n"
+            + "http://stream.host/1.m3u8\n"
+            + "#EXTINF:5 tvg-id=\"two\" group-title=\"News\" catchup=\"shift\",Two\n"
+            + "#EXTVLCOPT:http-user-agent=Agent/1.0\n"
+            + "#EXTHTTP:{\"referer\":\"http://ref.host/\",\"cookie\":\"a=b\"}\n"
+            + "http://stream.host/2.m3u8\n"
+            + "#EXTINF:-1,Three\n"
+            + "http://stream.host/3.m3u8\n";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private MockWebServer mServer;
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        M3ULog.setLevel(M3ULog.NONE);
+        mServer = new MockWebServer();
+        mFile = new File(mFolder.getRoot(), "playlist.snapshot");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+        M3ULog.setLevel(M3ULog.INFO);
+    }
+
+    private static M3UParser newParser() {
+        M3UParser parser = new M3UParser();
+        parser.registerAttribute("catchup");
+        parser.registerAttribute("catchup-days");
+        return parser;
+    }
+
+    private static M3UPlaylist parse(String playlist) throws IOException {
+        M3UPlaylist parsed = new M3UPlaylist();
+        assertTrue(newParser().parse(new Buffer().writeUtf8(playlist), parsed, true));
+        return parsed;
+    }
+
+    @Test
+    public void readsBackWhatWasWritten() throws IOException {
+        M3UPlaylist playlist = parse(PLAYLIST);
+        M3USnapshot.write(playlist, "etag:\"v1\"", mFile);
+        assertFalse(new File(mFile.getPath() + ".tmp").exists());
+
+        M3USnapshot snapshot = M3USnapshot.open(mFile);
+        assertNotNull(snapshot);
+        assertEquals("etag:\"v1\"", snapshot.getValidator());
+        assertEquals("http://epg.host/guide.xml", snapshot.getHead().getTVGUrl());
+        assertEquals("Provider", snapshot.getHead().getName());
+        assertEquals(playlist.size(), snapshot.size());
+        for (int i = 0; i < playlist.size(); i++) {
+            assertEquals(fields(playlist.get(i)), fields(snapshot.get(i)));
+        }
+        assertEquals("7", snapshot.get(0).getAttribute("catchup-days"));
+        assertNull(snapshot.get(2).getAttributes());
+
+        Handler replayed = new Handler();
+        assertTrue(snapshot.replay(replayed, true));
+        assertEquals(items(playlist), replayed.mItems);
+        assertNotNull(replayed.mHead);
+        Handler withoutHead = new Handler();
+        assertTrue(snapshot.replay(withoutHead, false));
+        assertNull(withoutHead.mHead);
+    }
+
+    @Test
+    public void writesAnEmptyPlaylist() throws IOException {
+        M3USnapshot.write(new M3UPlaylist(), "etag:\"v0\"", mFile);
+        M3USnapshot snapshot = M3USnapshot.open(mFile);
+        assertNotNull(snapshot);
+        assertEquals(0, snapshot.size());
+        assertNull(snapshot.getHead());
+    }
+
+    @Test
+    public void doesNotOpenADamagedFile() throws IOException {
+        assertNull(M3USnapshot.open(mFile));
+        M3USnapshot.write(parse(PLAYLIST), "etag:\"v1\"", mFile);
+        long length = mFile.length();
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            // A bit flipped in the body.
+            file.seek(length - 9);
+            int b = file.read();
+            file.seek(length - 9);
+            file.write(b ^ 0x10);
+            assertNull(M3USnapshot.open(mFile));
+            file.seek(length - 9);
+            file.write(b);
+            assertNotNull(M3USnapshot.open(mFile));
+
+            file.setLength(length - 4);
+            assertNull(M3USnapshot.open(mFile));
+            file.setLength(10);
+            assertNull(M3USnapshot.open(mFile));
+        }
+    }
+
+    @Test
+    public void replaysTheSnapshotWhileTheValidatorMatches() throws IOException {
+        mServer.enqueue(new MockResponse().setHeader("ETag", "\"v1\"").setBody(PLAYLIST));
+        // The same version served again, only its snapshot is read.
+        mServer.enqueue(new MockResponse().setHeader("ETag", "\"v1\"")
+                .setBody("#EXTM3U\n#EXTINF:-1,Other\nhttp://other.host/\n"));
+        mServer.enqueue(new MockResponse().setHeader("ETag", "\"v2\"")
+                .setBody("#EXTM3U\n#EXTINF:-1,New\nhttp://new.host/\n"));
+        mServer.start();
+        String url = mServer.url("/playlist.m3u").toString();
+        M3UParser parser = newParser();
+        parser.setSnapshotFile(mFile);
+
+        Handler first = new Handler();
+        assertTrue(parser.parse(url, first, true));
+        assertEquals(3, first.mItems.size());
+        assertEquals("etag:\"v1\"", M3USnapshot.open(mFile).getValidator());
+
+        Handler replayed = new Handler();
+        assertTrue(parser.parse(url, replayed, true));
+        assertEquals(first.mItems, replayed.mItems);
+
+        Handler changed = new Handler();
+        assertTrue(parser.parse(url, changed, true));
+        assertEquals(1, changed.mItems.size());
+        assertEquals("etag:\"v2\"", M3USnapshot.open(mFile).getValidator());
+    }
+
+    @Test
+    public void parsesInFullWhenTheSnapshotIsTruncated() throws IOException {
+        M3USnapshot.write(parse(PLAYLIST), "etag:\"v1\"", mFile);
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+        mServer.enqueue(new MockResponse().setHeader("ETag", "\"v1\"").setBody(PLAYLIST));
+        mServer.start();
+        M3UParser parser = newParser();
+        parser.setSnapshotFile(mFile);
+
+        Handler handler = new Handler();
+        assertTrue(parser.parse(mServer.url("/playlist.m3u").toString(), handler, true));
+        assertEquals(items(parse(PLAYLIST)), handler.mItems);
+        // Written again from the full parse.
+        M3USnapshot snapshot = M3USnapshot.open(mFile);
+        assertNotNull(snapshot);
+        assertEquals(3, snapshot.size());
+    }
+
+    private static List<String> items(Iterable<M3UItem> items) {
+        List<String> fields = new ArrayList<>();
+        for (M3UItem item : items) {
+            fields.add(fields(item));
+        }
+        return fields;
+    }
+
+    private static String fields(M3UItem item) {
+        return item.getChannelName() + "|" + item.getChannelID() + "|" + item.getDuration() + "|"
+                + item.getStreamURL() + "|" + item.getLogoURL() + "|" + item.getGroupTitle() + "|"
+                + item.getType() + "|" + item.getDLNAExtras() + "|" + item.getPlugin() + "|"
+                + item.getLicenseType() + "|" + item.getLicenseKey() + "|"
+                + item.getUserAgent() + "|" + sorted(item.getHttpHeader()) + "|"
+                + sorted(item.getAttributes());
+    }
+
+    private static Map<String, String> sorted(Map<String, String> map) {
+        return map == null ? null : new TreeMap<>(map);
+    }
+
+    private static final class Handler implements M3UParser.M3UHandler {
+        private final List<String> mItems = new ArrayList<>();
+        private M3UHead mHead = null;
+
+        @Override
+        public boolean onSetEXTM3U(M3UHead header) {
+            mHead = header;
+            return true;
+        }
+
+        @Override
+        public boolean onReadEXTM3U() {
+            return true;
+        }
+
+        @Override
+        public boolean onReadEXTINF(M3UItem item) {
+            mItems.add(fields(item));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.swinder.android.m3uparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+public class M3UStreamProberTest {
+    private MockWebServer mServer;
+    private final List<RecordedRequest> mRequests = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger mRunning = new AtomicInteger();
+    private final AtomicInteger mMaxRunning = new AtomicInteger();
+    private M3UStreamProber mProber;
+
+    @Before
+    public void setUp() throws Exception {
+        M3ULog.setLevel(M3ULog.NONE);
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                mRequests.add(request);
+                int running = mRunning.incrementAndGet();
+                mMaxRunning.accumulateAndGet(running, Math::max);
+                try {
+                    return respond(request);
+                } finally {
+                    mRunning.decrementAndGet();
+                }
+            }
+        });
+        mServer.start();
+        mProber = new M3UStreamProber(new M3UParser());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mProber.cancel();
+        mServer.shutdown();
+        M3ULog.setLevel(M3ULog.INFO);
+    }
+
+    /**
+     * /nohead refuses HEAD, /drophead drops the connection of HEAD, /dead answers 404, /slow
+     * waits before answering, /busy holds the connection a while so probes overlap, /hang never
+     * answers in time.
+     */
+    private static MockResponse respond(RecordedRequest request) throws InterruptedException {
+        String path = request.getPath();
+        if (path.startsWith("/nohead")) {
+            return "HEAD".equals(request.getMethod()) ? new MockResponse().setResponseCode(405)
+                    : new MockResponse().setResponseCode(206).setBody("x");
+        }
+        if (path.startsWith("/drophead")) {
+            return "HEAD".equals(request.getMethod())
+                    ? new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST)
+                    : new MockResponse().setResponseCode(206).setBody("x");
+        }
+        if (path.startsWith("/dead")) {
+            return new MockResponse().setResponseCode(404);
+        }
+        if (path.startsWith("/slow")) {
+            return new MockResponse().setHeadersDelay(300, TimeUnit.MILLISECONDS);
+        }
+        if (path.startsWith("/busy")) {
+            Thread.sleep(200);
+            return new MockResponse();
+        }
+        if (path.startsWith("/hang")) {
+            return new MockResponse().setHeadersDelay(5, TimeUnit.SECONDS);
+        }
+        return new MockResponse();
+    }
+
+    private M3UItem item(String path) {
+        M3UItem item = new M3UItem();
+        item.setStreamURL(path.contains("://") ? path : mServer.url(path).toString());
+        return item;
+    }
+
+    @Test
+    public void fallsBackToARangedGetWhenHeadIsRefused() throws Exception {
+        M3UItem item = item("/nohead");
+        item.setUserAgent("Agent/1.0");
+        M3UProbeResult result = mProber.probe(item).get(5, TimeUnit.SECONDS);
+        assertTrue(result.isReachable());
+        assertEquals(206, result.getCode());
+        assertEquals(2, mRequests.size());
+        assertEquals("HEAD", mRequests.get(0).getMethod());
+        assertEquals("GET", mRequests.get(1).getMethod());
+        assertEquals("bytes=0-0", mRequests.get(1).getHeader("Range"));
+        assertEquals("Agent/1.0", mRequests.get(1).getHeader("User-Agent"));
+    }
+
+    @Test
+    public void fallsBackToARangedGetWhenHeadIsDropped() throws Exception {
+        M3UProbeResult result = mProber.probe(item("/drophead")).get(5, TimeUnit.SECONDS);
+        assertTrue(result.isReachable());
+        assertEquals(206, result.getCode());
+        RecordedRequest last = mRequests.get(mRequests.size() - 1);
+        assertEquals("GET", last.getMethod());
+        assertEquals("bytes=0-0", last.getHeader("Range"));
+    }
+
+    @Test
+    public void limitsTheProbesOfAHost() throws Exception {
+        mProber.setMaxProbes(16, 2);
+        List<M3UItem> items = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            items.add(item("/busy/" + i));
+        }
+        List<M3UProbeResult> results = mProber.probe(items).get(10, TimeUnit.SECONDS);
+        for (M3UProbeResult result : results) {
+            assertTrue(result.isReachable());
+        }
+        assertEquals(8, mRequests.size());
+        assertEquals(2, mMaxRunning.get());
+    }
+
+    @Test
+    public void timesOut() throws Exception {
+        mProber.setTimeout(300);
+        long start = System.nanoTime();
+        M3UProbeResult result = mProber.probe(item("/hang")).get(5, TimeUnit.SECONDS);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        assertTrue(result.isProbed());
+        assertFalse(result.isReachable());
+        assertEquals(-1, result.getCode());
+        assertNotNull(result.getError());
+    }
+
+    @Test
+    public void cachesResultsUntilTheyExpire() throws Exception {
+        M3UItem item = item("/a");
+        CompletableFuture<M3UProbeResult> first = mProber.probe(item);
+        first.get(5, TimeUnit.SECONDS);
+        assertSame(first, mProber.probe(item("/a")));
+        assertEquals(1, mRequests.size());
+
+        mProber.setCacheTtl(100);
+        Thread.sleep(150);
+        CompletableFuture<M3UProbeResult> second = mProber.probe(item);
+        assertNotSame(first, second);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(2, mRequests.size());
+    }
+
+    @Test
+    public void evictsExpiredResults() throws Exception {
+        mProber.setCacheTtl(100);
+        mProber.probe(Arrays.asList(item("/a"), item("/b"), item("/c"))).get(5, TimeUnit.SECONDS);
+        assertEquals(3, mProber.cacheSize());
+        Thread.sleep(150);
+        mProber.probe(Collections.singletonList(item("/d"))).get(5, TimeUnit.SECONDS);
+        assertEquals(1, mProber.cacheSize());
+    }
+
+    @Test
+    public void evictsExpiredResultsWhenProbingItemByItem() throws Exception {
+        mProber.setCacheTtl(0);
+        for (int i = 0; i < 3 * M3UStreamProber.EVICT_THRESHOLD; i++) {
+            mProber.probe(item("/a/" + i)).get(5, TimeUnit.SECONDS);
+        }
+        assertTrue(mProber.cacheSize() <= M3UStreamProber.EVICT_THRESHOLD);
+    }
+
+    @Test
+    public void cancelDropsTheProbesRunning() throws Exception {
+        mProber.probe(item("/a")).get(5, TimeUnit.SECONDS);
+        CompletableFuture<M3UProbeResult> running = mProber.probe(item("/hang"));
+        assertEquals(2, mProber.cacheSize());
+        mProber.cancel();
+        M3UProbeResult result = running.get(5, TimeUnit.SECONDS);
+        assertFalse(result.isReachable());
+        // The finished probe stays cached, the cancelled one is probed again.
+        assertEquals(1, mProber.cacheSize());
+        assertNotSame(running, mProber.probe(item("/hang")));
+    }
+
+    @Test
+    public void ranksReachableFastestFirstThenUnprobedThenDead() throws Exception {
+        M3UItem dead = item("/dead");
+        M3UItem rtmp = item("rtmp://stream.host/live");
+        M3UItem slow = item("/slow");
+        M3UItem fast = item("/fast");
+        M3UItem fast2 = item("/fast2");
+        List<M3UItem> ranked = mProber.rank(Arrays.asList(dead, rtmp, slow, fast, fast2))
+                .get(5, TimeUnit.SECONDS);
+        assertSame(slow, ranked.get(2));
+        assertSame(rtmp, ranked.get(3));
+        assertSame(dead, ranked.get(4));
+        assertTrue(ranked.subList(0, 2).containsAll(Arrays.asList(fast, fast2)));
+    }
+}
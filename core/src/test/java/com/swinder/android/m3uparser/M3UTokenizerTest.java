@@ -0,0 +1,253 @@
+package com.swinder.android.m3uparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Checks {@link M3UTokenizer} against the state machine M3UParser used before it, kept below as
+ * it was, over the payloads of tokenizer-corpus.txt and random ones.
+ */
+public class M3UTokenizerTest {
+    private static final String[] COMMON_KEYS = {
+            "duration", "channel_name", "id", "tvg-id", "id-tvg", "tvg-chno", "tvg-name",
+            "logo", "tvg-logo", "group-title", "tvg-group-title", "type", "dlna_extras",
+            "plugin", "name", "x-tvg-url", "url-tvg", "http-user-agent",
+            "inputstream.adaptive.license_type", "inputstream.adaptive.license_key",
+    };
+
+    private final M3UTokenizer mTokenizer = new M3UTokenizer();
+
+    @Test
+    public void corpusMatchesFormerStateMachine() throws IOException {
+        List<String> corpus = corpus();
+        assertFalse(corpus.isEmpty());
+        for (String payload : corpus) {
+            assertSameAttributes(payload);
+        }
+    }
+
+    @Test
+    public void itemFieldsMatchFormerAliases() throws IOException {
+        M3UAttributeSchema schema = M3UParseSession.ITEM_SCHEMA;
+        String[] values = new String[schema.size()];
+        for (String payload : corpus()) {
+            mTokenizer.tokenize(payload, 0, payload.length(), schema, values);
+            Map<String, String> attributes = FormerParser.parseAttributes(payload.trim());
+            for (int slot = 0; slot < schema.size(); slot++) {
+                String name = schema.getName(slot);
+                String expected = FormerParser.getAttr(attributes, name);
+                if ("id".equals(name) && expected == null) {
+                    expected = FormerParser.getAttr(attributes, "tvg-chno");
+                }
+                assertEquals(payload + " [" + name + "]", expected, values[slot]);
+            }
+        }
+    }
+
+    @Test
+    public void randomPayloadsMatchFormerStateMachine() {
+        String[] parts = {
+                " ", "  ", "\t", ",", "=", "\"", "-1", "7", "tvg-id", "group-title", "a", "b c",
+                "http://host/x?y=1", "name", "\u00e9", "tvg-name=", "=\"", "\" ",
+        };
+        Random random = new Random(42);
+        StringBuilder payload = new StringBuilder();
+        for (int n = 0; n < 20000; n++) {
+            payload.setLength(0);
+            int count = random.nextInt(12);
+            for (int i = 0; i < count; i++) {
+                payload.append(parts[random.nextInt(parts.length)]);
+            }
+            assertSameAttributes(payload.toString());
+        }
+    }
+
+    private void assertSameAttributes(String payload) {
+        Map<String, String> expected = FormerParser.parseAttributes(payload.trim());
+        // One slot per key, the ones found by the former parser and some it should not find.
+        Set<String> keys = new LinkedHashSet<>(expected.keySet());
+        keys.addAll(Arrays.asList(COMMON_KEYS));
+        List<String> names = new ArrayList<>(keys);
+        List<String[]> slots = new ArrayList<>();
+        for (String key : names) {
+            slots.add(new String[] {key});
+        }
+        M3UAttributeSchema schema = new M3UAttributeSchema(names, slots);
+        String[] values = new String[schema.size()];
+        mTokenizer.tokenize(payload, 0, payload.length(), schema, values);
+        Map<String, String> actual = new HashMap<>();
+        for (int slot = 0; slot < schema.size(); slot++) {
+            if (values[slot] != null) {
+                actual.put(schema.getName(slot), values[slot]);
+            }
+        }
+        assertEquals("[" + payload + "]", expected, actual);
+    }
+
+    private static List<String> corpus() throws IOException {
+        List<String> corpus = new ArrayList<>();
+        try (InputStream in = M3UTokenizerTest.class.getResourceAsStream("tokenizer-corpus.txt");
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    corpus.add(line);
+                }
+            }
+        }
+        return corpus;
+    }
+
+    /**
+     * The attribute parsing of M3UParser before {@link M3UTokenizer}, unchanged.
+     */
+    private static final class FormerParser {
+        private static final String EMPTY_STRING = "";
+        private static final String ATTR_CHANNEL_NAME = "channel_name";
+        private static final String ATTR_DURATION = "duration";
+        private static final String ATTR_TVG_PREFIX = "tvg-";
+        private static final String ATTR_TVG_SUFFIX = "-tvg";
+
+        private static String trim(String str) {
+            return str == null ? null : str.trim();
+        }
+
+        private static void putAttr(Map<String, String> map, String key, String value) {
+            map.put(key, value);
+        }
+
+        static String getAttr(Map<String, String> map, String key) {
+            String value = map.get(key);
+            if (value == null) {
+                value = map.get(ATTR_TVG_PREFIX + key);
+                if (value == null) {
+                    value = map.get(key + ATTR_TVG_SUFFIX);
+                }
+            }
+            return value;
+        }
+
+        static Map<String, String> parseAttributes(String words) {
+            Map<String, String> attr = new HashMap<>();
+            if (words == null || words.equals(EMPTY_STRING)) {
+                return attr;
+            }
+            Status status = Status.READY;
+            String tmp = words;
+            StringBuffer connector = new StringBuffer();
+            int i = 0;
+            char c = tmp.charAt(i);
+            if (c == '-' || Character.isDigit(c)) {
+                connector.append(c);
+                while (++i < tmp.length()) {
+                    c = tmp.charAt(i);
+                    if (Character.isDigit(c)) {
+                        connector.append(c);
+                    } else {
+                        break;
+                    }
+                }
+                putAttr(attr, ATTR_DURATION, connector.toString());
+                tmp = trim(tmp.replaceFirst(connector.toString(), EMPTY_STRING));
+                reset(connector);
+                i = 0;
+            }
+            String key = EMPTY_STRING;
+            boolean startWithQuota = false;
+            while (i < tmp.length()) {
+                c = tmp.charAt(i++);
+                switch (status) {
+                    case READY:
+                        if (Character.isWhitespace(c)) {
+                            // Do nothing
+                        } else if (c == ',') {
+                            putAttr(attr, ATTR_CHANNEL_NAME, tmp.substring(i));
+                            i = tmp.length();
+                        } else {
+                            connector.append(c);
+                            status = Status.READING_KEY;
+                        }
+                        break;
+                    case READING_KEY:
+                        if (c == '=') {
+                            key = trim(key + connector);
+                            reset(connector);
+                            status = Status.KEY_READY;
+                        } else {
+                            connector.append(c);
+                        }
+                        break;
+                    case KEY_READY:
+                        if (!Character.isWhitespace(c)) {
+                            if (c == '"') {
+                                startWithQuota = true;
+                            } else {
+                                connector.append(c);
+                            }
+                            status = Status.READING_VALUE;
+                        }
+                        break;
+                    case READING_VALUE:
+                        if (startWithQuota) {
+                            if (c != '"') {
+                                connector.append(c);
+                                int end = tmp.indexOf("\"", i);
+                                end = end == -1 ? tmp.length() : end;
+                                connector.append(tmp.substring(i, end));
+                                startWithQuota = false;
+                                i = end + 1;
+                            }
+                            putAttr(attr, key, connector.toString());
+                            reset(connector);
+                            key = EMPTY_STRING;
+                            status = Status.READY;
+                            break;
+                        }
+                        if (Character.isWhitespace(c) && tmp.substring(i).contains("=")) {
+                            if (connector.length() > 0) {
+                                putAttr(attr, key, connector.toString());
+                                reset(connector);
+                            }
+                            key = EMPTY_STRING;
+                            status = Status.READY;
+                        } else {
+                            connector.append(c);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (!key.equals(EMPTY_STRING) && connector.length() > 0) {
+                putAttr(attr, key, connector.toString());
+                reset(connector);
+            }
+            return attr;
+        }
+
+        private static void reset(StringBuffer buffer) {
+            buffer.delete(0, buffer.length());
+        }
+
+        private enum Status {
+            READY, READING_KEY, KEY_READY, READING_VALUE,
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.swinder.android.m3uparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * Checks that a playlist parsed with its raw records kept is written back byte for byte, and that
+ * the edited items are written from their fields and read back the same.
+ */
+public class M3UWriterTest {
+    private static final String PLAYLIST = "#EXTM3U x-tvg-url=\"http://epg.host/guide.xml\""
+            + " catchup=\"shift\"\n"
+            + "# A comment before the first record\n"
+            + "#EXTINF:-1 tvg-id=\"one\" tvg-logo=\"http://logo.host/1.png\" group-title=\"News\""
+            + " catchup-days=\"7\",One\n"
+            + "#EXTGRP:News\n"
+            + "http://stream.host/1.m3u8\n"
+            + "#EXTINF:-1 tvg-id=\"two\"   group-title=\"Movies\",Two\r\n"
+            + "#KODIPROP:inputstream.adaptive.license_type=com.widevine.alpha\n"
+            + "#KODIPROP:inputstream.adaptive.license_key=http://license.host/key\n"
+            + "#EXTVLCOPT:http-user-agent=Agent/1.0\n"
+            + "\n"
+            + "http://stream.host/2.m3u8\r\n"
+            + "#EXTINF:0 tvg-id=\"three\",Three\n"
+            + "#EXTHTTP:{\"referer\":\"http://ref.host/\",\"cookie\":\"a=b\"}\n"
+            + "http://stream.host/3.m3u8\n";
+
+    @Test
+    public void writesUnchangedItemsByteForByte() throws IOException {
+        M3UParser parser = new M3UParser();
+        parser.setKeepRawRecords(true);
+        M3UPlaylist playlist = new M3UPlaylist();
+        assertTrue(parser.parse(new Buffer().writeUtf8(PLAYLIST), playlist, true));
+        assertEquals(3, playlist.size());
+
+        Buffer out = new Buffer();
+        M3UWriter writer = new M3UWriter(out);
+        writer.writeHead(playlist.getHead());
+        writer.write(playlist);
+        writer.flush();
+        assertEquals(PLAYLIST, out.readUtf8());
+        assertEquals(3, writer.getCopiedCount());
+        assertEquals(0, writer.getEncodedCount());
+    }
+
+    @Test
+    public void doesNotCopyTheSkippedHeadWithTheFirstItem() throws IOException {
+        M3UParser parser = new M3UParser();
+        parser.setKeepRawRecords(true);
+        M3UPlaylist playlist = new M3UPlaylist();
+        assertTrue(parser.parse(new Buffer().writeUtf8(PLAYLIST), playlist, false));
+        assertNull(playlist.getHead());
+
+        Buffer out = new Buffer();
+        M3UWriter writer = new M3UWriter(out);
+        writer.writeHead(playlist.getHead());
+        writer.write(playlist);
+        writer.flush();
+        assertEquals("#EXTM3U\n" + PLAYLIST.substring(PLAYLIST.indexOf('\n') + 1),
+                out.readUtf8());
+        assertEquals(3, writer.getCopiedCount());
+    }
+
+    @Test
+    public void doesNotCopyAStrayURLWithTheNextItem() throws IOException {
+        String record = "#EXTINF:-1,One\nhttp://stream.host/1.m3u8\n";
+        M3UParser parser = new M3UParser();
+        parser.setKeepRawRecords(true);
+        M3UPlaylist playlist = new M3UPlaylist();
+        assertTrue(parser.parse(new Buffer().writeUtf8("#EXTM3U\nhttp://stray.host/0\n" + record),
+                playlist, true));
+        assertEquals(1, playlist.size());
+
+        Buffer out = new Buffer();
+        M3UWriter writer = new M3UWriter(out);
+        writer.write(playlist);
+        writer.flush();
+        assertEquals(record, out.readUtf8());
+    }
+
+    @Test
+    public void writesCarriageReturnOnlyPlaylistsByteForByte() throws IOException {
+        String playlist = PLAYLIST.replace("\r\n", "\n").replace('\n', '\r');
+        M3UParser parser = new M3UParser();
+        parser.setKeepRawRecords(true);
+        M3UPlaylist parsed = new M3UPlaylist();
+        assertTrue(parser.parse(new Buffer().writeUtf8(playlist), parsed, true));
+        assertEquals(3, parsed.size());
+        assertEquals("http://stream.host/2.m3u8", parsed.get(1).getStreamURL());
+        assertEquals("Agent/1.0", parsed.get(1).getUserAgent());
+
+        Buffer out = new Buffer();
+        M3UWriter writer = new M3UWriter(out);
+        writer.writeHead(parsed.getHead());
+        writer.write(parsed);
+        writer.flush();
+        assertEquals(playlist, out.readUtf8());
+    }
+
+    @Test
+    public void writesEditedItemsFromTheirFields() throws IOException {
+        M3UParser parser = new M3UParser();
+        parser.setKeepRawRecords(true);
+        Handler parsed = new Handler();
+        assertTrue(parser.parse(new Buffer().writeUtf8(PLAYLIST), parsed, true));
+        List<M3UItem> items = parsed.mItems;
+        assertEquals(3, items.size());
+        byte[] first = items.get(0).getRaw();
+        assertNotNull(first);
+        items.get(1).setGroupTitle("Say \"Hi\"");
+        items.get(2).setChannelName("Three HD");
+        assertNull(items.get(1).getRaw());
+        assertNull(items.get(2).getRaw());
+
+        Buffer out = new Buffer();
+        M3UWriter writer = new M3UWriter(out);
+        writer.writeHead(parsed.mHead);
+        writer.write(items);
+        writer.flush();
+        assertEquals(1, writer.getCopiedCount());
+        assertEquals(2, writer.getEncodedCount());
+        ByteString written = out.snapshot();
+        ByteString unchanged = new Buffer().write(parsed.mHead.getRaw()).write(first)
+                .readByteString();
+        assertTrue(written.startsWith(unchanged));
+
+        Handler reparsed = new Handler();
+        assertTrue(new M3UParser().parse(out, reparsed, true));
+        assertEquals(3, reparsed.mItems.size());
+        assertEquals("http://epg.host/guide.xml", reparsed.mHead.getTVGUrl());
+        items.get(1).setGroupTitle("Say 'Hi'");
+        for (int i = 0; i < items.size(); i++) {
+            assertSameFields(items.get(i), reparsed.mItems.get(i));
+        }
+    }
+
+    @Test
+    public void replacesDoubleQuotesInAttributeValues() throws IOException {
+        M3UItem item = new M3UItem();
+        item.setDuration(-1);
+        item.setChannelID("a\"b");
+        item.setChannelName("Name");
+        item.setStreamURL("http://stream.host/a.m3u8");
+        Buffer out = new Buffer();
+        M3UWriter writer = new M3UWriter(out);
+        writer.write(item);
+        writer.flush();
+        assertEquals("#EXTINF:-1 tvg-id=\"a'b\",Name\nhttp://stream.host/a.m3u8\n",
+                out.readUtf8());
+    }
+
+    private static void assertSameFields(M3UItem expected, M3UItem actual) {
+        String name = expected.getChannelName();
+        assertEquals(name, expected.getChannelName(), actual.getChannelName());
+        assertEquals(name, expected.getDuration(), actual.getDuration());
+        assertEquals(name, expected.getChannelID(), actual.getChannelID());
+        assertEquals(name, expected.getLogoURL(), actual.getLogoURL());
+        assertEquals(name, expected.getGroupTitle(), actual.getGroupTitle());
+        assertEquals(name, expected.getType(), actual.getType());
+        assertEquals(name, expected.getLicenseType(), actual.getLicenseType());
+        assertEquals(name, expected.getLicenseKey(), actual.getLicenseKey());
+        assertEquals(name, expected.getUserAgent(), actual.getUserAgent());
+        assertEquals(name, expected.getHttpHeader(), actual.getHttpHeader());
+        assertEquals(name, expected.getStreamURL(), actual.getStreamURL());
+    }
+
+    private static final class Handler implements M3UParser.M3UHandler {
+        private final List<M3UItem> mItems = new ArrayList<>();
+        private M3UHead mHead = null;
+
+        @Override
+        public boolean onSetEXTM3U(M3UHead header) {
+            mHead = header;
+            return true;
+        }
+
+        @Override
+        public boolean onReadEXTM3U() {
+            return true;
+        }
+
+        @Override
+        public boolean onReadEXTINF(M3UItem item) {
+            mItems.add(item);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.swinder.android.m3uparser;
+
+import android.util.Log;
+
+/**
+ * The default logger on Android, the only class of this module: the parser is in the core
+ * module, which does not depend on the Android SDK and loads this class by name.
+ */
+final class M3UAndroidLogger implements M3ULog.Logger {
+    @Override
+    public void i(String tag, String msg) {
+        Log.i(tag, msg);
+    }
+
+    @Override
+    public void e(String tag, String msg) {
+        Log.e(tag, msg);
+    }
+}